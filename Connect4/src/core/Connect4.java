@@ -10,12 +10,19 @@ package core;
 
 public class Connect4 implements Connect4Constants {
     private char spots[][];
-    private int lastSpot[];
+    private int lastMove;
+    private int heights[];
     private char currentToken;
     private boolean isTie;
     private boolean playerXWin;
     private boolean playerOWin;
     private int whoseTurn;
+    private int moveCount;
+    private byte moveHistory[];
+    private boolean incrementalCheck;
+    // the same tokens as spots, packed as in Connect4Bitboard, so the position key never needs the board scanned
+    private long playerXBoard;
+    private long mask;
 
     /**
      * Instantiates a 2D array which will store all tokens placed. This constructor
@@ -28,12 +35,18 @@ public class Connect4 implements Connect4Constants {
                 spots[row][col] = ' ';
             }
         }
-        lastSpot = new int[2]; // row, column
+        lastMove = pack(0, 0);
+        heights = new int[COLUMNS]; // number of tokens in each column
         currentToken = ' ';
         isTie = false;
         playerXWin = false;
         playerOWin = false;
         whoseTurn = PLAYERX;
+        moveCount = 0;
+        moveHistory = new byte[ROWS * COLUMNS]; // column of every move, in the order they were made
+        incrementalCheck = true;
+        playerXBoard = 0L;
+        mask = 0L;
     }
 
     /**
@@ -45,10 +58,57 @@ public class Connect4 implements Connect4Constants {
      * @return an int array representing the coordinates of where the player's token landed (row, col)
      */
     public int[] makeMove(int col) {
+        int move = makeMovePacked(col);
+        return new int[] {packedRow(move), packedCol(move)};
+    }
+
+    /**
+     * Does the same as makeMove, but returns the coordinate packed into a single int (see the pack method)
+     * so that no array is made. Game sessions and searches that make a lot of moves should use this.
+     * If the move is not valid, -1 is returned.
+     *
+     * @param col the column where the player wants to drop their token
+     * @return the packed coordinate of where the player's token landed, or -1 if the move is not valid
+     */
+    public int makeMovePacked(int col) {
         setCurrentToken();
-        int[] coord = dropToken(col);
-        lastSpot = coord;
-        return coord;
+        lastMove = dropToken(col);
+        return lastMove;
+    }
+
+    /**
+     * Takes back the last move made. The token is removed from the board, it becomes the turn of the player
+     * who made that move again, and any win or tie is cleared since the game could not have ended before it.
+     * The last played spot goes back to the move before it. If no moves have been made, -1 is returned.
+     *
+     * @return the column the move was taken back from, or -1 if there was no move to take back
+     */
+    public int unmakeMove() {
+        if(moveCount == 0)
+            return -1;
+
+        moveCount--;
+        int col = moveHistory[moveCount];
+        int row = ROWS - heights[col];
+        heights[col]--;
+        whoseTurn = spots[row][col] == XPIECE ? PLAYERX : PLAYERO;
+        setCurrentToken();
+        spots[row][col] = ' ';
+        long cell = Connect4Bitboard.cellMask(row, col);
+        mask &= ~cell;
+        playerXBoard &= ~cell;
+
+        isTie = false;
+        playerXWin = false;
+        playerOWin = false;
+
+        if(moveCount > 0) {
+            int lastCol = moveHistory[moveCount - 1];
+            lastMove = pack(ROWS - heights[lastCol], lastCol);
+        }
+        else
+            lastMove = -1;
+        return col;
     }
 
     /**
@@ -70,12 +130,70 @@ public class Connect4 implements Connect4Constants {
         return false;
     }
 
+    /**
+     * Checks if the current player won and if there is a tie. In incremental mode (the default), only
+     * the four lines through the last played spot are checked, since any new four-in-a-row has to go
+     * through it, and a tie is found from the number of moves made. If incremental mode is off or
+     * the last spot is not on the board, the whole board is checked instead.
+     */
+    public void checkBoard() {
+        if(incrementalCheck && lastMove >= 0)
+            checkLastSpot();
+        else
+            checkWholeBoard();
+    }
+
+    /**
+     * Checks the four lines (vertical, horizontal and both diagonals) through the last played spot
+     * for four-in-a-row of the current token. If there is no winner, the board is full (a tie) once
+     * every spot has had a move made on it.
+     */
+    private void checkLastSpot() {
+        int row = packedRow(lastMove);
+        int col = packedCol(lastMove);
+
+        if(countInARow(row, col, 1, 0) >= 4 || countInARow(row, col, 0, 1) >= 4
+                || countInARow(row, col, 1, 1) >= 4 || countInARow(row, col, 1, -1) >= 4) {
+            if (whoseTurn == PLAYERX)
+                playerXWin = true;
+            else
+                playerOWin = true;
+        }
+
+        if(!(playerXWin || playerOWin))
+            isTie = moveCount == ROWS * COLUMNS;
+    }
+
+    /**
+     * Counts how many of the current token are in an unbroken line through a spot, going
+     * both ways along the given direction. The spot itself is counted if it holds the current token.
+     *
+     * @param row the row of the spot the line goes through
+     * @param col the column of the spot the line goes through
+     * @param rowStep the change in row for one step along the line
+     * @param colStep the change in column for one step along the line
+     * @return the number of the current token in a row through the spot
+     */
+    private int countInARow(int row, int col, int rowStep, int colStep) {
+        if(spots[row][col] != currentToken)
+            return 0;
+
+        int inARow = 1;
+        for(int r = row + rowStep, c = col + colStep; isValidSpot(r, c) && spots[r][c] == currentToken;
+            r += rowStep, c += colStep)
+            inARow++;
+        for(int r = row - rowStep, c = col - colStep; isValidSpot(r, c) && spots[r][c] == currentToken;
+            r -= rowStep, c -= colStep)
+            inARow++;
+        return inARow;
+    }
+
     /**
      * Checks the whole board to see if the current player won by checking for four-in-a-row
      * in all directions starting at the top-left. It traverses through the whole board.
      * If it does not find a winner, it checks if board is full which means there is a tie.
      */
-    public void checkBoard() {
+    private void checkWholeBoard() {
         for(int row = 0; row < ROWS; row++) {
             for(int col = 0; col < COLUMNS; col++) {
                 // used for checking if there are four-in-a-row
@@ -196,29 +314,53 @@ public class Connect4 implements Connect4Constants {
 
     /**
      * This private method places a token at the bottom of the column requested by the player as long as the
-     * move is valid (calls isValidMove method). If the move is valid, it sets the bottom-most spot to the
-     * current player's token. If a move is not possible, this method returns [-1, -1]
+     * column is on the board and not full. The height of each column is kept, so the bottom-most open spot
+     * is found without looking through the rows. If a move is not possible, this method returns -1.
      *
      * @param col the column in which the player has requested the token to be dropped in.
-     * @return the coordinates of where the token was placed (row, col)
+     * @return the packed coordinate of where the token was placed
      */
-    private int[] dropToken(int col) {
-        int[] coord = new int[2];
-
-        for(int row = ROWS - 1; row >= 0; row--) {
-            if (isValidMove(row, col)) {
-                coord[0] = row;
-                coord[1] = col;
-                setSpot(coord);
-                return coord;
-            }
-        }
-        // represents a move is invalid
-        coord[0] = -1;
-        coord[1] = -1;
-        return coord;
+    private int dropToken(int col) {
+        if(col < 0 || col >= COLUMNS || heights[col] == ROWS)
+            return -1; // represents a move is invalid
+
+        int row = ROWS - 1 - heights[col];
+        spots[row][col] = currentToken;
+        heights[col]++;
+        long cell = Connect4Bitboard.cellMask(row, col);
+        mask |= cell;
+        if(currentToken == XPIECE)
+            playerXBoard |= cell;
+        moveHistory[moveCount] = (byte) col;
+        moveCount++;
+        return pack(row, col);
     }
 
+    /**
+     * Packs a coordinate into a single int so it can be passed around without making an array.
+     *
+     * @param row the row of the coordinate
+     * @param col the column of the coordinate
+     * @return an int holding both the row and column
+     */
+    public static int pack(int row, int col) { return row * COLUMNS + col; }
+
+    /**
+     * Gets the row out of a packed coordinate.
+     *
+     * @param move a packed coordinate, or -1 for an invalid move
+     * @return the row of the coordinate, or -1 for an invalid move
+     */
+    public static int packedRow(int move) { return move < 0 ? -1 : move / COLUMNS; }
+
+    /**
+     * Gets the column out of a packed coordinate.
+     *
+     * @param move a packed coordinate, or -1 for an invalid move
+     * @return the column of the coordinate, or -1 for an invalid move
+     */
+    public static int packedCol(int move) { return move < 0 ? -1 : move % COLUMNS; }
+
     /**
      * Sets the specified coordinate of the spots
      * array to the current player's token.
@@ -229,6 +371,13 @@ public class Connect4 implements Connect4Constants {
         int row = coord[0];
         int col = coord[1];
         spots[row][col] = currentToken;
+        long cell = Connect4Bitboard.cellMask(row, col);
+        mask &= ~cell;
+        playerXBoard &= ~cell;
+        if(currentToken == XPIECE)
+            playerXBoard |= cell;
+        if(currentToken == XPIECE || currentToken == OPIECE)
+            mask |= cell;
     }
 
     /**
@@ -257,14 +406,33 @@ public class Connect4 implements Connect4Constants {
      * @return a String bearing the appropriate message depending on the outcome (tie, playerX wins, playerO wins, no-win)
      */
     public String checkForWinner() {
+        switch(getOutcome()) {
+            case TIE:
+                return "TIE";
+            case PLAYERXWON:
+                return "PLAYERX";
+            case PLAYEROWON:
+                return "PLAYERO";
+            default:
+                return "NO_WIN";
+        }
+    }
+
+    /**
+     * Does the same as checkForWinner, but returns the outcome as one of the codes the server sends
+     * to the clients, so it can be compared with == and written straight to a player.
+     *
+     * @return TIE, PLAYERXWON, PLAYEROWON or NOWIN from Connect4Constants
+     */
+    public int getOutcome() {
         if(isTie)
-            return "TIE";
+            return TIE;
         else if(playerXWin)
-            return "PLAYERX";
+            return PLAYERXWON;
         else if(playerOWin)
-            return "PLAYERO";
+            return PLAYEROWON;
         else
-            return "NO_WIN";
+            return NOWIN;
     }
 
     /**
@@ -285,6 +453,53 @@ public class Connect4 implements Connect4Constants {
             whoseTurn = PLAYERX;
     }
 
+    /**
+     * Turns incremental win and tie checking in checkBoard on or off. It is on by default; turning it
+     * off makes checkBoard scan the whole board after every move.
+     *
+     * @param incrementalCheck true to only check the lines through the last played spot
+     */
+    public void setIncrementalCheck(boolean incrementalCheck) { this.incrementalCheck = incrementalCheck; }
+
+    /**
+     * Gets the number of tokens that have been dropped on the board.
+     *
+     * @return an int that is the number of moves made so far
+     */
+    public int getMoveCount() { return moveCount; }
+
+    /**
+     * Gets the key of the current position, which is the same key Connect4Bitboard.getKey gives for these tokens,
+     * so the transposition table, opening book, tablebase and evaluation cache all agree with it. It is kept up to
+     * date as tokens are dropped and taken back, so the board is never scanned for it.
+     *
+     * @return a long identifying the position and whose turn it is
+     */
+    public long getKey() {
+        long playerOBoard = mask ^ playerXBoard;
+        long current = Long.bitCount(playerXBoard) > Long.bitCount(playerOBoard) ? playerOBoard : playerXBoard;
+        return current + mask + Connect4Bitboard.BOTTOM_MASK;
+    }
+
+    /**
+     * Gets a key that is the same for a position and its left-right mirror image, which
+     * always have the same value to both players.
+     *
+     * @return the smaller of the position's key and the key of its mirror image
+     */
+    public long getCanonicalKey() {
+        long key = getKey();
+        return Math.min(key, Connect4Bitboard.mirror(key));
+    }
+
+    /**
+     * Gets a bitboard of the current position for a search to work on. It is made from the two longs kept with
+     * the board, so unlike Connect4Bitboard.fromSpots it does not look at every spot.
+     *
+     * @return a new Connect4Bitboard with the same tokens on it, whose moves cannot be taken back with undo
+     */
+    public Connect4Bitboard getBitboard() { return Connect4Bitboard.fromBoards(playerXBoard, mask); }
+
     /**
      * Gets the current token in play (i.e. based on which player's turn it is).
      *
@@ -304,12 +519,24 @@ public class Connect4 implements Connect4Constants {
      *
      * @param coord an int[] that indicates the last played spot
      */
-    public void setLastSpot(int[] coord) { lastSpot = coord; }
+    public void setLastSpot(int[] coord) {
+        if(isValidSpot(coord[0], coord[1]))
+            lastMove = pack(coord[0], coord[1]);
+        else
+            lastMove = -1;
+    }
 
     /**
      * Retrieves the last played spot on the game board.
      *
      * @return the last played spot on the game board
      */
-    public int[] getLastSpot() { return lastSpot; }
+    public int[] getLastSpot() { return new int[] {packedRow(lastMove), packedCol(lastMove)}; }
+
+    /**
+     * Retrieves the last played spot on the game board as a packed coordinate.
+     *
+     * @return the packed coordinate of the last played spot, or -1 if there is none
+     */
+    public int getLastSpotPacked() { return lastMove; }
 }
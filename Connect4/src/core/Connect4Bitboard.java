@@ -0,0 +1,585 @@
+/**
+ * This is a second representation of the Connect4 game logic which packs the board into two longs, one for each
+ * player, instead of a 2D char array. Each column uses ROWS + 1 bits (the extra bit is a sentinel that keeps the
+ * columns apart), with bit 0 of a column being the bottom row. A mask of every occupied spot doubles as the height
+ * of each column, so dropping a token and checking for four-in-a-row are a handful of word operations.
+ *
+ * It keeps the same public methods the server uses on the Connect4 class, so it can be swapped in wherever a game
+ * session only needs to make moves and check for a winner.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4Bitboard implements Connect4Constants {
+    // number of bits used by a single column, including the sentinel bit on top
+    static final int COLUMN_HEIGHT = ROWS + 1;
+    // one bit at the bottom of every column
+    static final long BOTTOM_MASK = bottomMask();
+    // every playable spot on the board
+    static final long BOARD_MASK = BOTTOM_MASK * ((1L << ROWS) - 1);
+
+    private long playerXBoard;
+    private long playerOBoard;
+    private long mask;
+    private int lastSpot[];
+    private char currentToken;
+    private boolean isTie;
+    private boolean playerXWin;
+    private boolean playerOWin;
+    private int whoseTurn;
+    private int moveCount;
+    private int historySize;
+    private byte moveHistory[];
+
+    /**
+     * Starts with an empty board and player X's turn.
+     */
+    public Connect4Bitboard() {
+        playerXBoard = 0L;
+        playerOBoard = 0L;
+        mask = 0L;
+        lastSpot = new int[2]; // row, column
+        currentToken = ' ';
+        isTie = false;
+        playerXWin = false;
+        playerOWin = false;
+        whoseTurn = PLAYERX;
+        moveCount = 0;
+        historySize = 0;
+        moveHistory = new byte[ROWS * COLUMNS]; // column of every move, in the order they were made
+    }
+
+    /**
+     * Builds a bitboard from a 2D char array of the board, such as the one from Connect4.getSpots. Player X always
+     * goes first, so it is player X's turn if both players have the same number of tokens and player O's otherwise.
+     * The order the tokens were played in is not known, so the moves on the board cannot be taken back with undo.
+     *
+     * @param spots a 2D char array of the board with XPIECE, OPIECE or ' ' in every spot
+     * @return a Connect4Bitboard with the same tokens on it
+     */
+    public static Connect4Bitboard fromSpots(char[][] spots) {
+        long playerXBoard = 0L;
+        long mask = 0L;
+        for(int row = 0; row < ROWS; row++) {
+            for(int col = 0; col < COLUMNS; col++) {
+                if(spots[row][col] == XPIECE)
+                    playerXBoard |= cellMask(row, col);
+                if(spots[row][col] == XPIECE || spots[row][col] == OPIECE)
+                    mask |= cellMask(row, col);
+            }
+        }
+        return fromBoards(playerXBoard, mask);
+    }
+
+    /**
+     * Builds a bitboard from player X's tokens and every taken spot, such as the ones Connect4 keeps. Whose turn
+     * it is follows from the number of tokens, as with fromSpots.
+     *
+     * @param playerXBoard a long with a bit set for every spot player X has taken
+     * @param mask a long with a bit set for every spot that has a token
+     * @return a Connect4Bitboard with the same tokens on it
+     */
+    static Connect4Bitboard fromBoards(long playerXBoard, long mask) {
+        Connect4Bitboard board = new Connect4Bitboard();
+        board.playerXBoard = playerXBoard;
+        board.playerOBoard = mask ^ playerXBoard;
+        board.mask = mask;
+        board.moveCount = Long.bitCount(mask);
+        if(Long.bitCount(board.playerXBoard) > Long.bitCount(board.playerOBoard))
+            board.whoseTurn = PLAYERO;
+        board.setCurrentToken();
+        return board;
+    }
+
+    /**
+     * Sets the current token based on which player's turn it is, then drops the token into the
+     * requested column. If the move is not valid, [-1, -1] is returned.
+     *
+     * @param col the column where the player wants to drop their token
+     * @return an int array representing the coordinates of where the player's token landed (row, col)
+     */
+    public int[] makeMove(int col) {
+        setCurrentToken();
+        int[] coord = new int[2];
+        if(col < 0 || col >= COLUMNS || (mask & topMask(col)) != 0) {
+            // represents a move is invalid
+            coord[0] = -1;
+            coord[1] = -1;
+        }
+        else {
+            long move = (mask + bottomMask(col)) & columnMask(col);
+            if(whoseTurn == PLAYERX)
+                playerXBoard |= move;
+            else
+                playerOBoard |= move;
+            mask |= move;
+            moveHistory[historySize++] = (byte) col;
+            moveCount++;
+
+            coord[0] = toRow(Long.numberOfTrailingZeros(move));
+            coord[1] = col;
+        }
+        lastSpot = coord;
+        return coord;
+    }
+
+    /**
+     * Checks if a column is on the board and has room for another token.
+     *
+     * @param col the column to check
+     * @return true if a token can be dropped in the column
+     */
+    public boolean canPlay(int col) {
+        return col >= 0 && col < COLUMNS && (mask & topMask(col)) == 0;
+    }
+
+    /**
+     * Drops the current player's token into a column and then changes the turn to the other player. This is the
+     * move used by searches; unlike makeMove it does not check the column or set the last spot, so canPlay has
+     * to be true for the column.
+     *
+     * @param col the column to drop the token in
+     */
+    public void play(int col) {
+        long move = (mask + bottomMask(col)) & columnMask(col);
+        if(whoseTurn == PLAYERX) {
+            playerXBoard |= move;
+            whoseTurn = PLAYERO;
+        }
+        else {
+            playerOBoard |= move;
+            whoseTurn = PLAYERX;
+        }
+        mask |= move;
+        moveHistory[historySize++] = (byte) col;
+        moveCount++;
+    }
+
+    /**
+     * Takes back the last move made with play or makeMove. It becomes the turn of the player who made that move
+     * again, and any win or tie is cleared since the game could not have ended before it.
+     *
+     * @return the column the move was taken back from, or -1 if there was no move to take back
+     */
+    public int undo() {
+        if(historySize == 0)
+            return -1;
+
+        int col = moveHistory[--historySize];
+        long move = Long.highestOneBit(mask & columnMask(col));
+        if((playerXBoard & move) != 0) {
+            playerXBoard ^= move;
+            whoseTurn = PLAYERX;
+        }
+        else {
+            playerOBoard ^= move;
+            whoseTurn = PLAYERO;
+        }
+        mask ^= move;
+        moveCount--;
+
+        isTie = false;
+        playerXWin = false;
+        playerOWin = false;
+        return col;
+    }
+
+    /**
+     * Checks if the player whose turn it is would get four-in-a-row by dropping a token in a column.
+     * The column has to have room for the token.
+     *
+     * @param col the column to check
+     * @return true if the move wins the game
+     */
+    public boolean isWinningMove(int col) {
+        long move = (mask + bottomMask(col)) & columnMask(col);
+        return hasFourInARow(getCurrentPlayerBoard() | move);
+    }
+
+    /**
+     * Finds the spot each column's next token would land on.
+     *
+     * @return a long with a bit set for every spot a token can be dropped on now
+     */
+    public long possibleMoves() {
+        return (mask + BOTTOM_MASK) & BOARD_MASK;
+    }
+
+    /**
+     * Finds every move that wins right away for the player whose turn it is.
+     *
+     * @return a long with a bit set for the landing spot of every winning move, or 0 if there is none
+     */
+    public long winningMoves() {
+        return winningSpots(getCurrentPlayerBoard(), mask) & possibleMoves();
+    }
+
+    /**
+     * Finds every move that would win right away for the other player if it were their turn, which are the
+     * moves the player whose turn it is has to block.
+     *
+     * @return a long with a bit set for the landing spot of every move to block, or 0 if there is none
+     */
+    public long opponentWinningMoves() {
+        return winningSpots(getOpponentBoard(), mask) & possibleMoves();
+    }
+
+    /**
+     * Finds the moves that do not let the other player win on their next move: if they have a winning move it
+     * has to be blocked, and a token must not be dropped right under a spot where they would win. If the other
+     * player can win in two places at once, no move is safe. This does not check for a winning move first.
+     *
+     * @return a long with a bit set for the landing spot of every safe move, or 0 if every move loses
+     */
+    public long nonLosingMoves() {
+        long possible = possibleMoves();
+        long threats = winningSpots(getOpponentBoard(), mask);
+        long forced = possible & threats;
+        if(forced != 0) {
+            if((forced & (forced - 1)) != 0)
+                return 0;
+            possible = forced;
+        }
+        return possible & ~(threats >>> 1);
+    }
+
+    /**
+     * Checks if a move is within the game board's limits and if there is not already a token at that coordinate.
+     *
+     * @param row is an int that represents the row to be checked
+     * @param col is an int that represents the column to be checked
+     * @return a boolean that indicates if the token can be placed at the specified coordinate (row, col)
+     */
+    public boolean isValidMove(int row, int col) {
+        if(isValidSpot(row, col))
+            return (mask & cellMask(row, col)) == 0;
+        return false;
+    }
+
+    /**
+     * Checks if a spot is within the board. It does not check if the spot is taken.
+     *
+     * @param row an int which is the row to check to see if the spot is valid
+     * @param col an int which is the column to check to see if the spot is valid
+     * @return a boolean that indicates if the spot is valid or not
+     */
+    public boolean isValidSpot(int row, int col) {
+        return (row >= 0 && row <= ROWS - 1) && (col >= 0 && col <= COLUMNS - 1);
+    }
+
+    /**
+     * Checks if the current player has four-in-a-row in any direction. If they do not,
+     * it checks if the board is full which means there is a tie.
+     */
+    public void checkBoard() {
+        long board = currentToken == XPIECE ? playerXBoard : playerOBoard;
+        if(currentToken != ' ' && hasFourInARow(board)) {
+            if(whoseTurn == PLAYERX)
+                playerXWin = true;
+            else
+                playerOWin = true;
+        }
+
+        if(!(playerXWin || playerOWin))
+            isTie = mask == BOARD_MASK;
+    }
+
+    /**
+     * Checks the win-state instance variables to see if there is a tie or a specific player won, else
+     * there is no winner. The checkBoard method needs to run first.
+     *
+     * @return a String bearing the appropriate message depending on the outcome (tie, playerX wins, playerO wins, no-win)
+     */
+    public String checkForWinner() {
+        switch(getOutcome()) {
+            case TIE:
+                return "TIE";
+            case PLAYERXWON:
+                return "PLAYERX";
+            case PLAYEROWON:
+                return "PLAYERO";
+            default:
+                return "NO_WIN";
+        }
+    }
+
+    /**
+     * Does the same as checkForWinner, but returns one of the outcome codes the server sends to the clients.
+     *
+     * @return TIE, PLAYERXWON, PLAYEROWON or NOWIN from Connect4Constants
+     */
+    public int getOutcome() {
+        if(isTie)
+            return TIE;
+        else if(playerXWin)
+            return PLAYERXWON;
+        else if(playerOWin)
+            return PLAYEROWON;
+        else
+            return NOWIN;
+    }
+
+    /**
+     * Checks if a board has four tokens in a row horizontally, vertically or diagonally. The sentinel
+     * bit on top of every column keeps a line from wrapping around into the next column.
+     *
+     * @param board a long with a bit set for every token of one player
+     * @return true if there is four-in-a-row on the board
+     */
+    static boolean hasFourInARow(long board) {
+        // horizontal
+        long m = board & (board >> COLUMN_HEIGHT);
+        if((m & (m >> (2 * COLUMN_HEIGHT))) != 0)
+            return true;
+        // diagonal down-right
+        m = board & (board >> (COLUMN_HEIGHT - 1));
+        if((m & (m >> (2 * (COLUMN_HEIGHT - 1)))) != 0)
+            return true;
+        // diagonal up-right
+        m = board & (board >> (COLUMN_HEIGHT + 1));
+        if((m & (m >> (2 * (COLUMN_HEIGHT + 1)))) != 0)
+            return true;
+        // vertical
+        m = board & (board >> 1);
+        return (m & (m >> 2)) != 0;
+    }
+
+    /**
+     * Finds every empty spot where a player would complete four-in-a-row, whether or not a token can be dropped
+     * there yet. These are the player's threats.
+     *
+     * @param board a long with a bit set for every token of the player
+     * @param mask a long with a bit set for every token on the board
+     * @return a long with a bit set for every empty spot that would win for the player
+     */
+    static long winningSpots(long board, long mask) {
+        // vertical
+        long spots = (board << 1) & (board << 2) & (board << 3);
+        // horizontal and both diagonals: the empty spot can be at either end of the line or in the middle
+        for(int shift = COLUMN_HEIGHT - 1; shift <= COLUMN_HEIGHT + 1; shift++) {
+            long pair = (board << shift) & (board << (2 * shift));
+            spots |= pair & (board << (3 * shift));
+            spots |= pair & (board >>> shift);
+            pair = (board >>> shift) & (board >>> (2 * shift));
+            spots |= pair & (board << shift);
+            spots |= pair & (board >>> (3 * shift));
+        }
+        return spots & (BOARD_MASK ^ mask);
+    }
+
+    /**
+     * Sets the current token to the current player's token
+     */
+    public void setCurrentToken() {
+        if(whoseTurn == PLAYERX)
+            currentToken = XPIECE;
+        else
+            currentToken = OPIECE;
+    }
+
+    public void changePlayerTurn() {
+        if(whoseTurn == PLAYERX)
+            whoseTurn = PLAYERO;
+        else
+            whoseTurn = PLAYERX;
+    }
+
+    /**
+     * Gets the current token in play (i.e. based on which player's turn it is).
+     *
+     * @return a char representing the current token in play
+     */
+    public char getCurrentToken() { return currentToken; }
+
+    /**
+     * Builds the 2D array representing the board from the bitboards. A new array is
+     * made on every call, so changing it does not change the game.
+     *
+     * @return a 2D char array of the board
+     */
+    public char[][] getSpots() {
+        char[][] spots = new char[ROWS][COLUMNS];
+        for(int row = 0; row < ROWS; row++) {
+            for(int col = 0; col < COLUMNS; col++) {
+                long cell = cellMask(row, col);
+                if((playerXBoard & cell) != 0)
+                    spots[row][col] = XPIECE;
+                else if((playerOBoard & cell) != 0)
+                    spots[row][col] = OPIECE;
+                else
+                    spots[row][col] = ' ';
+            }
+        }
+        return spots;
+    }
+
+    /**
+     * Sets the last played spot on the game board.
+     *
+     * @param coord an int[] that indicates the last played spot
+     */
+    public void setLastSpot(int[] coord) { lastSpot = coord; }
+
+    /**
+     * Retrieves the last played spot on the game board.
+     *
+     * @return the last played spot on the game board
+     */
+    public int[] getLastSpot() { return lastSpot; }
+
+    /**
+     * Gets the bitboard of player X's tokens.
+     *
+     * @return a long with a bit set for every spot player X has taken
+     */
+    public long getPlayerXBoard() { return playerXBoard; }
+
+    /**
+     * Gets the bitboard of player O's tokens.
+     *
+     * @return a long with a bit set for every spot player O has taken
+     */
+    public long getPlayerOBoard() { return playerOBoard; }
+
+    /**
+     * Gets the bitboard of the tokens of the player whose turn it is.
+     *
+     * @return a long with a bit set for every spot the current player has taken
+     */
+    public long getCurrentPlayerBoard() { return whoseTurn == PLAYERX ? playerXBoard : playerOBoard; }
+
+    /**
+     * Gets the bitboard of the tokens of the player who is waiting for their turn.
+     *
+     * @return a long with a bit set for every spot the other player has taken
+     */
+    public long getOpponentBoard() { return whoseTurn == PLAYERX ? playerOBoard : playerXBoard; }
+
+    /**
+     * Gets a key that is different for every position. Adding the mask to the current player's tokens sets
+     * the bit just above the top of every column, which tells the heights apart, and the player whose turn it
+     * is follows from the number of tokens. It fits in 49 bits. The transposition table, the opening book, the
+     * tablebase and the evaluation cache are all looked up by it, and Connect4.getKey gives the same key.
+     *
+     * @return a long identifying the position and whose turn it is
+     */
+    public long getKey() { return getCurrentPlayerBoard() + mask + BOTTOM_MASK; }
+
+    /**
+     * Gets the key the position would have if the board were flipped left to right. A position and its mirror
+     * image have the same value to both players, so things stored by key can be shared between them.
+     *
+     * @return the key of the mirror image of the position
+     */
+    public long getMirroredKey() { return mirror(getKey()); }
+
+    /**
+     * Gets the number of tokens on the board.
+     *
+     * @return an int that is the number of moves made so far
+     */
+    public int getMoveCount() { return moveCount; }
+
+    /**
+     * Gets whose turn it is.
+     *
+     * @return PLAYERX or PLAYERO
+     */
+    public int getWhoseTurn() { return whoseTurn; }
+
+    /**
+     * Gets the bitboard of every taken spot, which also gives the height of each column.
+     *
+     * @return a long with a bit set for every spot that has a token
+     */
+    public long getMask() { return mask; }
+
+    /**
+     * Gets the bit of the bottom spot of a column.
+     *
+     * @param col the column
+     * @return a long with only the bottom bit of the column set
+     */
+    static long bottomMask(int col) {
+        return 1L << (col * COLUMN_HEIGHT);
+    }
+
+    /**
+     * Gets the bit of the top spot of a column.
+     *
+     * @param col the column
+     * @return a long with only the top playable bit of the column set
+     */
+    static long topMask(int col) {
+        return 1L << (ROWS - 1 + col * COLUMN_HEIGHT);
+    }
+
+    /**
+     * Gets every playable bit of a column.
+     *
+     * @param col the column
+     * @return a long with all the playable bits of the column set
+     */
+    static long columnMask(int col) {
+        return ((1L << ROWS) - 1) << (col * COLUMN_HEIGHT);
+    }
+
+    /**
+     * Gets the bit for a spot given as a row and column of the char[][] board, where row 0 is the top.
+     *
+     * @param row the row of the spot
+     * @param col the column of the spot
+     * @return a long with only the bit of that spot set
+     */
+    static long cellMask(int row, int col) {
+        return 1L << (col * COLUMN_HEIGHT + ROWS - 1 - row);
+    }
+
+    /**
+     * Translates a bit index back to the row of the char[][] board, where row 0 is the top.
+     *
+     * @param bit the index of the bit
+     * @return the row of the spot
+     */
+    static int toRow(int bit) {
+        return ROWS - 1 - bit % COLUMN_HEIGHT;
+    }
+
+    /**
+     * Translates a landing spot from possibleMoves and the like back to its column. If more than one bit is set,
+     * the leftmost column is given.
+     *
+     * @param moves a long with at least one bit set
+     * @return the column of the lowest set bit
+     */
+    static int toColumn(long moves) {
+        return Long.numberOfTrailingZeros(moves) / COLUMN_HEIGHT;
+    }
+
+    /**
+     * Flips a bitboard left to right by moving every column, including its sentinel bit, to the other side.
+     *
+     * @param board a bitboard or position key
+     * @return the bitboard with column 0 swapped with the last column, and so on
+     */
+    static long mirror(long board) {
+        long columnBits = (1L << COLUMN_HEIGHT) - 1;
+        long mirrored = 0L;
+        for(int col = 0; col < COLUMNS; col++) {
+            long column = (board >>> (col * COLUMN_HEIGHT)) & columnBits;
+            mirrored |= column << ((COLUMNS - 1 - col) * COLUMN_HEIGHT);
+        }
+        return mirrored;
+    }
+
+    /* Builds the mask with the bottom bit of every column set. */
+    private static long bottomMask() {
+        long bottom = 0L;
+        for(int col = 0; col < COLUMNS; col++)
+            bottom |= bottomMask(col);
+        return bottom;
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * This is the multi-threaded server that can handle multiple clients, as well as different types of game sessions
+ * (player v. player or computer v. player), with each session blocking on a thread of its own. It has nothing to do
+ * with JavaFX, so it runs on hosts without a display, started from the command line:
+ *
+ *     java core.Connect4BlockingServer [port] [--virtual] [--nocomputer] [--maxlevel=N]
+ *
+ * Connect4Server shows the same server in a window. What happens in the server is written to a Connect4Log, and
+ * the accept loop never looks up a player's host name, since the reverse lookup can take tens of milliseconds.
+ * Players are sent Connect4Messages over a Connect4Connection, and everything a player is told about a turn goes
+ * out in one flush.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Connect4BlockingServer implements Connect4Constants {
+    public static final int DEFAULTPORT = 8000;
+
+    private int port;
+    private AtomicInteger numSession;
+    // the opening book, tablebase, cache and move pool shared by every computer session
+    private Connect4ComputerService computerService;
+    // starts the accept loop and every session, on virtual threads in virtual mode
+    private Connect4SessionExecutor sessionExecutor;
+    // pairs up players who want a human opponent
+    private Connect4Lobby<Connect4Connection> lobby;
+    // whether a player nobody joins in time plays the computer instead
+    private boolean computerFallback;
+    private Connect4Log log;
+    private ServerSocket serverSocket;
+    private CountDownLatch stopped;
+
+    /**
+     * Creates a server. It does not listen until start is called.
+     *
+     * @param port the port to listen on
+     * @param virtual true to run sessions on virtual threads if this Java has them
+     * @param computerFallback true to give a player nobody joins in time a computer opponent
+     * @param computerService the computer players shared by the computer sessions
+     * @param log the log that connections and sessions are written to
+     */
+    public Connect4BlockingServer(int port, boolean virtual, boolean computerFallback,
+                                  Connect4ComputerService computerService, Connect4Log log) {
+        this.port = port;
+        numSession = new AtomicInteger(1);
+        this.computerService = computerService;
+        sessionExecutor = Connect4SessionExecutor.create(virtual);
+        lobby = new Connect4Lobby<>();
+        this.computerFallback = computerFallback;
+        this.log = log;
+        serverSocket = null;
+        stopped = new CountDownLatch(1);
+    }
+
+    /**
+     * Opens the port and starts the accept loop, which hands each client to a thread of its own that starts
+     * their computer session or matches them with another player in the lobby. If an exception occurs in the
+     * accept loop, the server socket will be closed.
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        if(computerService.getOpeningBook() != null)
+            log.log("book.loaded", "positions", computerService.getOpeningBook().getSize());
+        if(computerService.getTablebase() != null)
+            log.log("tablebase.loaded", "positions", computerService.getTablebase().getSize());
+        log.log("server.started", "port", port, "threads", sessionExecutor.isVirtual() ? "virtual" : "platform",
+                "maxLevel", computerService.getMaxLevel());
+
+        sessionExecutor.execute(() -> {
+            try {
+                // the accept loop only accepts: each new player is handled on a thread of their own
+                while (true) {
+                    Socket player = serverSocket.accept();
+                    // the address is logged as it is, with no reverse lookup of the host name
+                    log.log("player.joined", "address", player.getInetAddress());
+                    sessionExecutor.execute(new HandleNewPlayer(player));
+                }
+            } catch (IOException ex) {
+                if(!serverSocket.isClosed())
+                    System.err.println(ex);
+                stop();
+            }
+        });
+    }
+
+    /**
+     * Closes the server socket, which stops the accept loop. Sessions already started play on.
+     */
+    public void stop() {
+        if(serverSocket == null)
+            return;
+        try {
+            serverSocket.close();
+        } catch(IOException ex) {
+            System.err.println(ex);
+        }
+        stopped.countDown();
+    }
+
+    /**
+     * Waits until the server is stopped. Session threads may be daemons, so a command-line server waits here to
+     * keep the process running.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void awaitStop() throws InterruptedException { stopped.await(); }
+
+    /**
+     * Starts a server from the command line that logs to standard output and runs until the process is stopped.
+     *
+     * @param args the port, DEFAULTPORT if it is left out, and the options --virtual to run sessions on virtual
+     *             threads, --nocomputer to close the connection of a player nobody joins in time and --maxlevel=N
+     *             to cap the difficulty level of computer opponents
+     */
+    public static void main(String[] args) {
+        int port = DEFAULTPORT;
+        boolean virtual = false;
+        boolean computerFallback = true;
+        for(String arg : args) {
+            if(arg.equals("--virtual"))
+                virtual = true;
+            else if(arg.equals("--nocomputer"))
+                computerFallback = false;
+            else if(!arg.startsWith(Connect4ComputerService.MAXLEVELOPTION))
+                port = Integer.parseInt(arg);
+        }
+
+        Connect4ComputerService computerService = new Connect4ComputerService(
+                Connect4ComputerService.parseMaxLevel(Arrays.asList(args)));
+        computerService.open();
+        Connect4BlockingServer server = new Connect4BlockingServer(port, virtual, computerFallback, computerService,
+                Connect4Log.toStandardOut());
+        try {
+            server.start();
+            server.awaitStop();
+        } catch(IOException ex) {
+            System.err.println(ex);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* This class reads which opponent a new player wants and starts their session, or puts them in the lobby. */
+    class HandleNewPlayer implements Runnable {
+        private Connect4Connection player;
+        private Socket socket;
+
+        /**
+         * Constructor for the task that handles a player who just joined.
+         *
+         * @param socket a socket that is the connection to the new player
+         */
+        public HandleNewPlayer(Socket socket) {
+            this.player = null;
+            this.socket = socket;
+        }
+
+        /**
+         * Reads which opponent the player asked for. A player who wants the computer starts their session right
+         * away. A player who wants another player is matched in the lobby: if someone is waiting, this thread is
+         * done and the waiting player's thread runs the game; otherwise this player waits as player X. If nobody
+         * joins in time, the player gets a computer opponent, or their socket is closed if the server has no
+         * computer fallback.
+         */
+        public void run() {
+            try {
+                player = new Connect4Connection(socket);
+                Connect4Message whichOpponent = player.read();
+                if(whichOpponent.getType() == COMPUTEROPPONENT) {
+                    // the client sends the difficulty level along with asking for a computer opponent
+                    int level = whichOpponent.getValueCount() > 0 ? whichOpponent.getValue(0)
+                            : Connect4Difficulty.DEFAULTLEVEL;
+                    log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "computer");
+                    new HandleCompPlayerSess(player, level).run();
+                }
+                else if(whichOpponent.getType() == PLAYEROPPONENT) {
+                    CompletableFuture<Connect4Connection> ticket = lobby.join(player);
+                    if(ticket == null)
+                        return;
+                    player.send(PLAYERX);
+
+                    Connect4Connection otherPlayer = lobby.awaitOpponent(ticket);
+                    if(otherPlayer != null) {
+                        otherPlayer.send(PLAYERO);
+                        log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "player");
+                        new HandleTwoPlayerSess(player, otherPlayer).run();
+                    }
+                    else if(computerFallback) {
+                        // the computer plays O with the same messages a human opponent would send
+                        player.send(PLAYERXTURN);
+                        log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "computer",
+                                "reason", "no opponent joined");
+                        new HandleCompPlayerSess(player, Connect4Difficulty.DEFAULTLEVEL).run();
+                    }
+                    else
+                        player.close();
+                }
+                else
+                    socket.close();
+            } catch(IOException ex) {
+                System.err.println(ex);
+                try {
+                    socket.close();
+                } catch(IOException ex2) {
+                    System.err.println(ex2);
+                }
+            }
+        }
+    }
+
+    /* This class handles a two-player game session. */
+    class HandleTwoPlayerSess implements Runnable {
+        private Connect4 gameLogic;
+        private Connect4Connection player1;
+        private Connect4Connection player2;
+
+        private int row;
+        private int col;
+
+        /**
+         * Constructor for a two-player session. Instantiates the Connect4 object and the instance variable
+         * connections to the player1 and player2 parameters. Also, assigns the row and col invalid values that will
+         * be overwritten.
+         *
+         * @param player1 the connection to player1
+         * @param player2 the connection to player2
+         */
+        public HandleTwoPlayerSess(Connect4Connection player1, Connect4Connection player2) {
+            gameLogic = new Connect4();
+            this.player1 = player1;
+            this.player2 = player2;
+            row = -1;
+            col = -1;
+        }
+
+        /**
+         * When the thread with the task starts this will run. Implements the functionality
+         * to handle a two-player game session. Each player is sent everything about a turn in one flush: the
+         * player who moved gets the valid move and, if the game is over, the outcome, and the other player gets
+         * the outcome with the move. If an exception occurs, the connections to player1 and player2 will be closed.
+         */
+        public void run() {
+            try {
+                player1.send(PLAYERXTURN); // notify to start game
+
+                while(true) {
+                    // player X
+                    if(takeTurn(player1, player2, PLAYERXWON))
+                        break;
+
+                    // player O
+                    if(takeTurn(player2, player1, PLAYEROWON))
+                        break;
+                }
+            } catch(IOException ex) {
+                System.err.println(ex);
+                try {
+                    player1.close();
+                    player2.close();
+                } catch(IOException ex2) {
+                    System.err.println(ex2);
+                }
+            }
+        }
+
+        /**
+         * Plays one player's turn and tells both players about it.
+         *
+         * @param mover the connection to the player whose turn it is
+         * @param other the connection to the other player
+         * @param won the outcome if the player whose turn it is wins
+         * @return true if the game is over
+         * @throws IOException an exception that is thrown if there is a problem reading or sending a message
+         */
+        public boolean takeTurn(Connect4Connection mover, Connect4Connection other, int won) throws IOException {
+            makeMove(mover); // also updates row and col instance variables
+
+            gameLogic.checkBoard();
+            int anyWin = gameLogic.getOutcome();
+            if(anyWin == won || anyWin == TIE) {
+                mover.write(anyWin);
+                mover.flush();
+                other.send(anyWin, row, col);
+                return true;
+            }
+            mover.flush();
+            other.send(NOWIN, row, col);
+            gameLogic.changePlayerTurn();
+            return false;
+        }
+
+        /**
+         * Reads in a player's move and determines if it is valid. If it is invalid, it will continue to ask
+         * for a new column until the user enters a valid column. Changes the row and col instance variables
+         * to the appropriate value. The valid move is written to the player, to be sent with the rest of the turn,
+         * and the coordinates of the move are returned.
+         *
+         * @param player the connection to the player making a move
+         * @return an int that is the packed coordinate of the move the player made (see Connect4.pack)
+         * @throws IOException an exception that is thrown if there is a problem reading the move
+         */
+        public int makeMove(Connect4Connection player) throws IOException {
+            int move;
+            do {
+                move = gameLogic.makeMovePacked(readMove(player));
+                if(move < 0)
+                    player.send(INVALID);
+            } while (move < 0);
+            row = Connect4.packedRow(move);
+            col = Connect4.packedCol(move);
+
+            player.write(VALID, row, col);
+            return move;
+        }
+    }
+
+    /* This class is the task to handle a computer-player session */
+    class HandleCompPlayerSess implements Runnable {
+        private Connect4 gameLogic;
+        private Connect4Strategy computerPlayer;
+        private Connect4MovePool movePool;
+        private boolean ponders;
+        private int level;
+
+        private Connect4Connection player1;
+
+        private int row;
+        private int col;
+
+        /**
+         * This constructor instantiates the Connect4 object and connection instance variable to player1.
+         * Also assigns row and col invalid values that will be overwritten.
+         *
+         * @param player1 the connection to player1
+         * @param level the difficulty level the player asked for
+         */
+        public HandleCompPlayerSess(Connect4Connection player1, int level) {
+            gameLogic = new Connect4();
+            computerPlayer = null;
+            movePool = computerService.getMovePool();
+            ponders = false;
+            this.level = level;
+            this.player1 = player1;
+            row = -1;
+            col = -1;
+        }
+
+        /**
+         * This method will run when the thread with the task passed to it starts. It implements the functionality
+         * to handle a computer-player game session at the difficulty level the player asked for. At the higher
+         * levels the computer ponders on the move pool while waiting for the player. The player's valid move is
+         * sent before the computer starts thinking, so it shows right away, and the computer's move goes with the
+         * outcome in one message. If an exception occurs, the connection will be closed.
+         */
+        public void run() {
+            try {
+                level = computerService.clampLevel(level);
+                computerPlayer = computerService.createPlayer(level);
+                ponders = computerService.ponders(level);
+
+                while (true) {
+                    // player X
+                    makeMove(player1); // also updates row and col instance variables
+                    movePool.stopPondering(computerPlayer);
+
+                    gameLogic.checkBoard();
+                    int anyWin = gameLogic.getOutcome();
+                    if(anyWin == PLAYERXWON || anyWin == TIE) {
+                        player1.write(anyWin);
+                        player1.flush();
+                        break;
+                    }
+                    player1.flush();
+                    gameLogic.changePlayerTurn();
+
+                    col = movePool.determineMove(computerPlayer, gameLogic, Connect4Difficulty.getTimeBudget(level));
+                    int moveO = gameLogic.makeMovePacked(col);
+                    row = Connect4.packedRow(moveO);
+                    col = Connect4.packedCol(moveO);
+                    gameLogic.checkBoard();
+
+                    anyWin = gameLogic.getOutcome();
+                    player1.send(anyWin, row, col);
+                    if (anyWin != NOWIN)
+                        break;
+                    gameLogic.changePlayerTurn();
+                    if(ponders)
+                        movePool.startPondering(computerPlayer, gameLogic.getBitboard());
+                }
+            } catch(IOException ex) {
+                System.err.println(ex);
+                try {
+                    player1.close();
+                } catch(IOException ex2) {
+                    System.err.println(ex2);
+                }
+            } finally {
+                if(computerPlayer != null)
+                    movePool.stopPondering(computerPlayer);
+            }
+        }
+
+        /**
+         * Reads in a player's move and determines if it is valid. If it is invalid, it will send an invalid
+         * move message to the player and continue to ask for a new column until the user enters a valid column.
+         * The row and col instance variables are set once the move is valid.
+         * Once the move is valid, a valid message is written to the player, to be sent with the rest of the turn,
+         * and the packed coordinate of the move is returned.
+         *
+         * @param player the connection to the player making a move
+         * @return an int that is the packed coordinate of the move the player made (see Connect4.pack)
+         * @throws IOException an exception that is thrown if there is a problem reading the move
+         */
+        public int makeMove(Connect4Connection player) throws IOException {
+            int move;
+            do {
+                move = gameLogic.makeMovePacked(readMove(player));
+                if(move < 0)
+                    player.send(INVALID);
+            } while (move < 0);
+            row = Connect4.packedRow(move);
+            col = Connect4.packedCol(move);
+
+            player.write(VALID, row, col);
+            return move;
+        }
+    }
+
+    /* Reads the column of a player's move, treating any other message as a broken connection. */
+    private static int readMove(Connect4Connection player) throws IOException {
+        Connect4Message message = player.read();
+        if(message.getType() != MOVE || message.getValueCount() != 1)
+            throw new IOException("expected a move, got message type " + message.getType());
+        return message.getValue(0);
+    }
+}
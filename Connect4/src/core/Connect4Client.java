@@ -14,6 +14,7 @@ import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
@@ -24,14 +25,11 @@ import javafx.scene.text.FontPosture;
 import javafx.scene.text.FontWeight;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 
 public class Connect4Client extends Application implements Connect4Constants {
-    private DataOutputStream toServer;
-    private DataInputStream fromServer;
+    private Connect4Connection server;
 
     private char myToken = ' ';
     private char otherToken  = ' ';
@@ -51,9 +49,11 @@ public class Connect4Client extends Application implements Connect4Constants {
     private int moveRow = -1;
     private int moveCol = -1;
 
+    private int level = Connect4Difficulty.DEFAULTLEVEL;
+
     /**
      * This is the start method for the GUI. It asks the user whether they would like to play against a computer or
-     * another opponent. It also connects the player to the server. If an exception occurs, the socket will be closed.
+     * another opponent, and how hard the computer should be. It also connects the player to the server. If an exception occurs, the socket will be closed.
      *
      * @param primaryStage a stage which will hold the game board and messages
      */
@@ -69,8 +69,15 @@ public class Connect4Client extends Application implements Connect4Constants {
         playerStageHBox.setAlignment(Pos.CENTER);
         Button compButton = new Button("computer");
         Button playerButton = new Button("player");
+        Label levelLbl = new Label("level");
+        ChoiceBox<Integer> levelChoice = new ChoiceBox<>();
+        for (int i = Connect4Difficulty.MINLEVEL; i <= Connect4Difficulty.MAXLEVEL; i++) {
+            levelChoice.getItems().add(i);
+        }
+        levelChoice.setValue(Connect4Difficulty.DEFAULTLEVEL);
 
         compButton.setOnAction(e -> {
+            level = levelChoice.getValue();
             createComputerThread();
             Platform.runLater(() -> chooseOppntStg.close());
         });
@@ -79,7 +86,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             Platform.runLater(() -> chooseOppntStg.close());
         });
 
-        playerStageHBox.getChildren().addAll(compButton, playerButton);
+        playerStageHBox.getChildren().addAll(levelLbl, levelChoice, compButton, playerButton);
         BorderPane playerPane = new BorderPane();
         playerPane.setTop(askPlayer);
         playerPane.setCenter(playerStageHBox);
@@ -214,7 +221,7 @@ public class Connect4Client extends Application implements Connect4Constants {
         /**
          * The constructor for ChooseSpot; gives the object a blue border and importantly
          * adds listeners so a player can choose a column where they want to drop a token.
-         * If an exception occurs, the sockets toServer and fromServer will be closed.
+         * If an exception occurs, the connection to the server will be closed.
          */
         public ChooseSpot(int chooseSpotCol) {
             this.setPrefSize(2000, 2000);
@@ -270,7 +277,7 @@ public class Connect4Client extends Application implements Connect4Constants {
     }
 
     /**
-     * This method connects a client to the server, including creating data streams.
+     * This method connects a client to the server, including creating the connection messages are sent over.
      * If an exception occurs, the socket will be closed.
      */
     public void connectToServer() {
@@ -279,8 +286,7 @@ public class Connect4Client extends Application implements Connect4Constants {
         Socket socket = null;
         try {
             socket = new Socket(hostName, port);
-            toServer = new DataOutputStream(socket.getOutputStream());
-            fromServer = new DataInputStream(socket.getInputStream());
+            server = new Connect4Connection(socket);
         } catch (IOException ex) {
             System.err.println(ex);
             try {
@@ -293,12 +299,13 @@ public class Connect4Client extends Application implements Connect4Constants {
 
     /**
      * Checks if a player has won the game, or if there is no winner and the game should continue.
-     * It also gets the last move played.
+     * It also gets the last move played, which comes in the same message.
      *
-     * @throws IOException an exception that is thrown by the readInt() method if input is in an invalid format
+     * @throws IOException an exception that is thrown by the read() method if the message is in an invalid format
      */
     public void checkFromServerPvP() throws IOException {
-        int anyWin = fromServer.readInt();
+        Connect4Message message = server.read();
+        int anyWin = message.getType();
 
         if (anyWin == PLAYERXWON) {
             continuePlay = false;
@@ -307,7 +314,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             }
             else if (myToken == OPIECE) {
                 Platform.runLater(() -> displayWinnerLbl.setText("Game over - You lost"));
-                getMove();
+                getMove(message);
             }
             Platform.runLater(() -> endGameStg.show());
         }
@@ -315,7 +322,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             continuePlay = false;
             if (myToken == XPIECE) {
                 Platform.runLater(() -> displayWinnerLbl.setText("Game over - You lost"));
-                getMove();
+                getMove(message);
             }
             else if (myToken == OPIECE) {
                 Platform.runLater(() -> displayWinnerLbl.setText("Game over - You won!"));
@@ -327,11 +334,11 @@ public class Connect4Client extends Application implements Connect4Constants {
             Platform.runLater(() -> displayWinnerLbl.setText("Game over - Tie"));
             // player O would be the last one to make a move for a tie
             if (myToken == XPIECE)
-                getMove();
+                getMove(message);
             Platform.runLater(() -> endGameStg.show());
         }
         else if (anyWin == NOWIN) {
-            getMove();
+            getMove(message);
             Platform.runLater(() -> whoseTurnLbl.setText("Your turn"));
             myTurn = true;
         }
@@ -339,12 +346,13 @@ public class Connect4Client extends Application implements Connect4Constants {
 
     /**
      * Checks if a player has won the game, or if there is no winner and the game should continue.
-     * It also gets the last move played.
+     * It also gets the last move played, which comes in the same message.
      *
-     * @throws IOException an exception that is thrown by the readInt() method if input is in an invalid format
+     * @throws IOException an exception that is thrown by the read() method if the message is in an invalid format
      */
     public void checkFromServerComp() throws IOException {
-        int anyWin = fromServer.readInt();
+        Connect4Message message = server.read();
+        int anyWin = message.getType();
         if (anyWin == PLAYERXWON) {
             continuePlay = false;
             Platform.runLater(() -> {
@@ -354,7 +362,7 @@ public class Connect4Client extends Application implements Connect4Constants {
         }
         else if (anyWin == PLAYEROWON) {
             continuePlay = false;
-            getMove(); // this user is player X
+            getMove(message); // this user is player X
             Platform.runLater(() -> {
                 displayWinnerLbl.setText("Game over - You lost");
                 endGameStg.show();
@@ -362,14 +370,14 @@ public class Connect4Client extends Application implements Connect4Constants {
         }
         else if (anyWin == TIE) {
             continuePlay = false;
-            getMove();
+            getMove(message);
             Platform.runLater(() -> {
                 displayWinnerLbl.setText("Game over - Tie");
                 endGameStg.show();
             });
         }
         else if (anyWin == NOWIN) {
-            getMove();
+            getMove(message);
             Platform.runLater(() -> whoseTurnLbl.setText("Your turn"));
             myTurn = true;
         }
@@ -390,24 +398,24 @@ public class Connect4Client extends Application implements Connect4Constants {
     }
 
     /**
-     * Retrieves a move from the server and sets the spot on the game board.
+     * Sets the spot on the game board of the other player's move, which the server sent with the outcome.
      *
-     * @throws IOException an exception that is thrown by the readInt() method if input is in an invalid format
+     * @param message the message from the server with the row and column of the move
      */
-    public void getMove() throws IOException {
-        int row = fromServer.readInt();
-        int col = fromServer.readInt();
+    public void getMove(Connect4Message message) {
+        int row = message.getValue(0);
+        int col = message.getValue(1);
         Platform.runLater(() -> spots[row][col].markSpot(otherToken));
     }
 
     /**
      * When the player decides they want to play against the computer, this starts a game session thread
-     * to start play against it.
+     * to start play against it at the difficulty level they chose.
      */
     public void createComputerThread() {
         new Thread(() -> {
             try {
-                toServer.writeInt(COMPUTEROPPONENT);
+                server.send(COMPUTEROPPONENT, level);
 
                 myToken = XPIECE;
                 otherToken = OPIECE;
@@ -432,7 +440,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             catch (IOException ex) {
                 System.err.println(ex);
                 try {
-                    fromServer.close();
+                    server.close();
                 }
                 catch (IOException ex2) {
                     System.err.println(ex2);
@@ -447,10 +455,10 @@ public class Connect4Client extends Application implements Connect4Constants {
     public void createPlayerThread() {
         new Thread(() -> {
             try {
-                toServer.writeInt(PLAYEROPPONENT);
+                server.send(PLAYEROPPONENT);
 
                 // find out which player you are from server
-                int player = fromServer.readInt();
+                int player = server.read().getType();
 
                 if (player == PLAYERX) {
                     myToken = XPIECE;
@@ -463,7 +471,7 @@ public class Connect4Client extends Application implements Connect4Constants {
                     });
 
                     // signals that another player has joined the session
-                    fromServer.readInt();
+                    server.read();
 
                     Platform.runLater(() -> whoseTurnLbl.setText("Another player has joined - you start first."));
                     myTurn = true;
@@ -497,7 +505,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             catch (IOException ex) {
                 System.err.println(ex);
                 try {
-                    toServer.close();
+                    server.close();
                 } catch(IOException ex2) {
                     System.err.println(ex2);
                 }
@@ -515,17 +523,17 @@ public class Connect4Client extends Application implements Connect4Constants {
         if (myTurn) {
             try {
                 errorMsgLbl.setText(""); // clear any previous error messages
-                toServer.writeInt(chooseSpotCol);
-                int moveValid = fromServer.readInt();
-                if (moveValid == VALID) {
-                    moveRow = fromServer.readInt();
-                    moveCol = fromServer.readInt();
+                server.send(MOVE, chooseSpotCol);
+                Connect4Message moveValid = server.read();
+                if (moveValid.getType() == VALID) {
+                    moveRow = moveValid.getValue(0);
+                    moveCol = moveValid.getValue(1);
                     Platform.runLater(() -> spots[moveRow][moveCol].markSpot(myToken));
                     Platform.runLater(() -> whoseTurnLbl.setText("Waiting for other player to make a move"));
                     myTurn = false;
                     waiting = false;
                 }
-                else if (moveValid == INVALID) {
+                else if (moveValid.getType() == INVALID) {
                     Platform.runLater(() -> {
                         errorMsgLbl.setTextFill(Color.RED);
                         errorMsgLbl.setText("That column is full, choose another column");
@@ -534,8 +542,7 @@ public class Connect4Client extends Application implements Connect4Constants {
             } catch (IOException ex) {
                 System.err.println(ex);
                 try {
-                    toServer.close();
-                    fromServer.close();
+                    server.close();
                 } catch (IOException ex2) {
                     System.err.println(ex2);
                 }
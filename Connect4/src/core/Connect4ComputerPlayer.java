@@ -1,6 +1,6 @@
 /**
  * This is a naive-AI for the Connect4 game. It is built on a principle that it
- * should first prevent a win, then find an open spot that is two spaces away
+ * should first take a win, then prevent a win, then find an open spot that is two spaces away
  * from where the player last placed their token, and last on top of it. If no spot is open
  * based on this logic it finds the first open column and drops a token there.
  *
@@ -10,148 +10,77 @@
 
 package core;
 
-public class Connect4ComputerPlayer {
+public class Connect4ComputerPlayer implements Connect4Strategy, Connect4Constants {
     /**
-     * This first calls the preventWin() function to try to prevent a win, and if it does
-     * not need to prevent a win, the computer chooses a spot that is either two spots to
-     * left or right of where player X last placed their token, or on top of it. Last, the
-     * computer places a token in any open spot. If a -1 is returned, there is an unexpected
-     * error.
+     * This first takes a win if there is one, then calls the preventWin() function to try to prevent a win. If it
+     * does not need to prevent a win, the computer chooses the column either two columns to the left or right of
+     * where player X last placed their token, or the same column. Last, the computer places a token in the first
+     * open column. Columns that would let player X win on their next move are skipped, unless every column does.
+     * Which columns can be played is taken from a Connect4Bitboard that is built once, so no spot of the board is
+     * looked at on its own. If a -1 is returned, there is an unexpected error.
      *
      * @param coord the coordinates of the last played token (by player X)
      * @param gameBoard is a 2D char array representing the current state of the game board
-     * @param gameLogic is a Connect4 object used to call methods to determine move validity
+     * @param gameLogic is a Connect4 object for the game, whose bitboard is looked at
      * @return an int representing the column where the computer will play its token
      */
+    @Override
     public int determineMove(int[] coord, char[][] gameBoard, Connect4 gameLogic) {
+        Connect4Bitboard board = Connect4SearchPlayer.boardOf(gameBoard, gameLogic);
+        long wins = board.winningMoves();
+        if(wins != 0)
+            return Connect4Bitboard.toColumn(wins);
+
         // first check if a win should be prevented
-        if(preventWin(gameBoard, gameLogic) == -1) {
-            int row = coord[0];
-            int col = coord[1];
+        long blocks = board.opponentWinningMoves();
+        if(blocks != 0)
+            return Connect4Bitboard.toColumn(blocks);
 
-            // shift by two principle behind this naive-AI
-            int newCol = col - 2;
-            if (gameLogic.isValidMove(row, newCol))
-                return newCol;
-            newCol = col + 2;
-            if (gameLogic.isValidMove(row, newCol))
-                return newCol;
-            //if cannot shift by two, place on top of last-played column
-            if (gameLogic.isValidMove(row - 1, col))
-                return col;
-            //otherwise, find the first open spot
-            for (int iterRow = 0; iterRow < gameBoard.length; iterRow++) {
-                for (int iterCol = 0; iterCol < gameBoard[iterRow].length; iterCol++) {
-                    if (gameBoard[iterRow][iterCol] == ' ')
-                        return iterCol;
-                }
-            }
+        long safe = board.nonLosingMoves();
+        if(safe == 0)
+            safe = board.possibleMoves();
 
-            // this should never be returned; indicates something unexpected went wrong
-            return -1;
-        }
-        else {
-            return preventWin(gameBoard, gameLogic);
+        int col = coord[1];
+
+        // shift by two principle behind this naive-AI
+        if (isSafe(safe, col - 2))
+            return col - 2;
+        if (isSafe(safe, col + 2))
+            return col + 2;
+        //if cannot shift by two, place on top of last-played column
+        if (isSafe(safe, col))
+            return col;
+        //otherwise, find the first open column
+        for (int iterCol = 0; iterCol < COLUMNS; iterCol++) {
+            if (isSafe(safe, iterCol))
+                return iterCol;
         }
+
+        // this should never be returned; indicates something unexpected went wrong
+        return -1;
     }
 
     /**
-     * This checks the board to see if the human player is about to win (if they have
-     * three-in-a-row anywhere with a four-in-a-row option possible. It will then block the
-     * player from winning. If -1 is returned, there is no win to prevent.
+     * This checks the board to see if the human player is about to win (if they can get four-in-a-row
+     * with their next token). It will then block the player from winning. If -1 is returned, there is
+     * no win to prevent. The check is a few bit operations on a Connect4Bitboard rather than a walk over
+     * every spot, and it finds gaps in a line (like X X _ X) as well as the ends of three-in-a-rows.
      *
      * @param gameBoard is a 2D char array representing the current state of the board
-     * @param gameLogic is a Connect4 object used for some of its methods
+     * @param gameLogic is a Connect4 object for the game, whose bitboard is looked at
      * @return an int which is the column where the computer will place its token
      */
     public int preventWin(char[][] gameBoard, Connect4 gameLogic) {
-        int inARow;
+        long blocks = Connect4SearchPlayer.boardOf(gameBoard, gameLogic).opponentWinningMoves();
+        if(blocks != 0)
+            return Connect4Bitboard.toColumn(blocks);
 
-        for(int row = 0; row < gameBoard.length; row++) {
-            for(int col = 0; col < gameBoard[row].length; col++) {
-                // down
-                if (gameLogic.isValidMove(row + 3, col)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row + i][col] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col;
-                }
-                // up
-                if (gameLogic.isValidMove(row - 3, col)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row - i][col] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col;
-                }
-                // diagonal up-left
-                if (gameLogic.isValidMove(row - 3, col - 3)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row - i][col - i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col - 3;
-                }
-                // diagonal up-right
-                if (gameLogic.isValidMove(row - 3, col + 3)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row - i][col + i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col + 3;
-                }
-                // right
-                if (gameLogic.isValidMove(row, col + 3)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row][col + i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col + 3;
-                }
-                // left
-                if (gameLogic.isValidMove(row, col - 3)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row][col - i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col - 3;
-                }
-                // diagonal down-right
-                if (gameLogic.isValidMove(row + 3, col + 3)) {
-                    inARow = 0;
-                    for (int i = 2; i >= 0; i--) {
-                        if (gameBoard[row + i][col + i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if (inARow == 3)
-                        return col + 3;
-                }
-                //diagonal down-left
-                if (gameLogic.isValidMove(row + 3, col - 3)) {
-                    inARow = 0;
-                    for(int i = 2; i >= 0; i--) {
-                        if(gameBoard[row + i][col - i] == gameLogic.getCurrentToken())
-                            inARow++;
-                    }
-                    if(inARow == 3)
-                        return col - 3;
-                }
-            }
-        }
         // this indicates that there is no win to prevent
         return -1;
     }
+
+    /* Checks if a column is on the board and one of the safe moves, which can only be columns that are not full. */
+    private static boolean isSafe(long safe, int col) {
+        return col >= 0 && col < COLUMNS && (safe & Connect4Bitboard.columnMask(col)) != 0;
+    }
 }
@@ -0,0 +1,162 @@
+/**
+ * This holds everything the server's computer players share: the opening book, the tablebase of solved endgames,
+ * the cache of search results and the pool of threads that works out their moves. A server makes one of these when
+ * it starts and asks it for a computer player for each computer session. It has nothing to do with JavaFX, so any
+ * kind of server can use it.
+ *
+ * The highest difficulty level clients may ask for is set when the service is made, so operations can cap the CPU a
+ * single computer session uses; every server takes it as the command-line option --maxlevel=N.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class Connect4ComputerService implements Connect4Constants {
+    // the opening book for computer players, read from the working directory if it is there
+    public static final String BOOKFILE = "connect4.book";
+    // the tablebase of solved endgames, made in the working directory if it is not there
+    public static final String TABLEBASEFILE = "connect4.tb";
+    private static final int TABLEBASESLOTS = 1 << 20;
+    // computer players solve positions exactly once this many tokens are on the board
+    private static final int ENDGAMEMOVES = 24;
+    // the command-line option of the servers that caps the difficulty level, as in --maxlevel=8
+    public static final String MAXLEVELOPTION = "--maxlevel=";
+
+    // the highest difficulty level a client may ask for, which caps the CPU a single computer session can use
+    private int maxLevel;
+    private Connect4OpeningBook openingBook;
+    private Connect4Tablebase tablebase;
+    // works out the moves of every computer session, so at most one move per core is searched at once
+    private Connect4MovePool movePool;
+    // search results shared by every computer session
+    private Connect4EvalCache evalCache;
+
+    /**
+     * Creates the move pool and the cache, allowing every difficulty level. The book and tablebase are not there
+     * until open is called.
+     */
+    public Connect4ComputerService() {
+        this(Connect4Difficulty.MAXLEVEL);
+    }
+
+    /**
+     * Creates the move pool and the cache. The book and tablebase are not there until open is called.
+     *
+     * @param maxLevel the highest difficulty level a client may ask for; clients asking for more get this level
+     */
+    public Connect4ComputerService(int maxLevel) {
+        this.maxLevel = Connect4Difficulty.clamp(maxLevel, Connect4Difficulty.MAXLEVEL);
+        openingBook = null;
+        tablebase = null;
+        movePool = new Connect4MovePool();
+        evalCache = new Connect4EvalCache();
+    }
+
+    /**
+     * Gets the highest difficulty level from a server's command-line options.
+     *
+     * @param args the command-line options
+     * @return the level given with MAXLEVELOPTION, or Connect4Difficulty.MAXLEVEL if it is not there
+     */
+    public static int parseMaxLevel(List<String> args) {
+        for(String arg : args) {
+            if(arg.startsWith(MAXLEVELOPTION))
+                return Integer.parseInt(arg.substring(MAXLEVELOPTION.length()));
+        }
+        return Connect4Difficulty.MAXLEVEL;
+    }
+
+    /**
+     * Opens the opening book and the tablebase in the working directory. If either cannot be opened, the error
+     * is printed and the computer players do without it.
+     */
+    public void open() {
+        openingBook = Connect4OpeningBook.openIfExists(Paths.get(BOOKFILE));
+        try {
+            tablebase = Connect4Tablebase.open(Paths.get(TABLEBASEFILE), TABLEBASESLOTS);
+        } catch(IOException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    /**
+     * Keeps the level a client asked for within the levels this server allows.
+     *
+     * @param level the level the client sent
+     * @return the level to play at
+     */
+    public int clampLevel(int level) {
+        return Connect4Difficulty.clamp(level, maxLevel);
+    }
+
+    /**
+     * Gets the highest difficulty level this server allows.
+     *
+     * @return the level cap
+     */
+    public int getMaxLevel() { return maxLevel; }
+
+    /**
+     * Creates a computer player for one session at a level. A search player shares the book, tablebase and cache,
+     * and the helper searches or playouts of any player take free threads of the move pool.
+     *
+     * @param level a level from clampLevel
+     * @return the computer player for the session
+     */
+    public Connect4Strategy createPlayer(int level) {
+        Connect4Strategy computerPlayer = Connect4Difficulty.createPlayer(level, openingBook, tablebase,
+                ENDGAMEMOVES);
+        if(computerPlayer instanceof Connect4SearchPlayer) {
+            Connect4SearchPlayer searchPlayer = (Connect4SearchPlayer) computerPlayer;
+            searchPlayer.setSharedCache(evalCache);
+            searchPlayer.setHelperPool(movePool);
+        }
+        else if(computerPlayer instanceof Connect4MctsPlayer)
+            ((Connect4MctsPlayer) computerPlayer).setHelperPool(movePool);
+        return computerPlayer;
+    }
+
+    /**
+     * Tells if computer players at a level ponder while the human thinks.
+     *
+     * @param level a level from clampLevel
+     * @return true if the computer should ponder
+     */
+    public boolean ponders(int level) {
+        return level >= Connect4Difficulty.PONDERLEVEL && level < Connect4Difficulty.MCTSLEVEL;
+    }
+
+    /**
+     * Gets the pool that works out the computer players' moves.
+     *
+     * @return the shared move pool
+     */
+    public Connect4MovePool getMovePool() { return movePool; }
+
+    /**
+     * Gets the opening book.
+     *
+     * @return the opening book, or null if there is none
+     */
+    public Connect4OpeningBook getOpeningBook() { return openingBook; }
+
+    /**
+     * Gets the tablebase of solved endgames.
+     *
+     * @return the tablebase, or null if it could not be opened
+     */
+    public Connect4Tablebase getTablebase() { return tablebase; }
+
+    /**
+     * Gets the cache of search results shared by the computer players.
+     *
+     * @return the shared cache
+     */
+    public Connect4EvalCache getEvalCache() { return evalCache; }
+}
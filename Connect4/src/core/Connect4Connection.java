@@ -0,0 +1,155 @@
+/**
+ * This is a connection between the client and a blocking server that sends and receives Connect4Messages. Writes
+ * go into a buffer and only go out on flush, so everything a player is sent in a turn leaves in one write and
+ * usually one packet, instead of one small write per int.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+public class Connect4Connection implements Closeable {
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    /**
+     * Creates a connection over a socket, turning off Nagle's algorithm since every flush is a whole turn.
+     *
+     * @param socket the connected socket
+     * @throws IOException if the socket's streams cannot be opened
+     */
+    public Connect4Connection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Reads the next message, waiting for it.
+     *
+     * @return the message
+     * @throws IOException if the connection is closed or the message is not valid
+     */
+    public Connect4Message read() throws IOException { return Connect4Message.read(in); }
+
+    /**
+     * Adds a message to what will be sent on the next flush. Messages with up to two values go through the
+     * overloads below, which do not allocate an array.
+     *
+     * @param type the type of the message
+     * @param values the values of the message
+     * @throws IOException if the buffer fills up and cannot be written
+     */
+    public void write(int type, int... values) throws IOException { Connect4Message.write(out, type, values); }
+
+    /**
+     * Adds a message with no values to what will be sent on the next flush.
+     *
+     * @param type the type of the message
+     * @throws IOException if the buffer fills up and cannot be written
+     */
+    public void write(int type) throws IOException { Connect4Message.write(out, type); }
+
+    /**
+     * Adds a message with one value to what will be sent on the next flush.
+     *
+     * @param type the type of the message
+     * @param value the value of the message
+     * @throws IOException if the buffer fills up and cannot be written
+     */
+    public void write(int type, int value) throws IOException { Connect4Message.write(out, type, value); }
+
+    /**
+     * Adds a message with two values to what will be sent on the next flush.
+     *
+     * @param type the type of the message
+     * @param value1 the first value of the message
+     * @param value2 the second value of the message
+     * @throws IOException if the buffer fills up and cannot be written
+     */
+    public void write(int type, int value1, int value2) throws IOException {
+        Connect4Message.write(out, type, value1, value2);
+    }
+
+    /**
+     * Sends every message written since the last flush.
+     *
+     * @throws IOException if the messages cannot be sent
+     */
+    public void flush() throws IOException { out.flush(); }
+
+    /**
+     * Adds a message and sends it along with anything else that was written.
+     *
+     * @param type the type of the message
+     * @param values the values of the message
+     * @throws IOException if the messages cannot be sent
+     */
+    public void send(int type, int... values) throws IOException {
+        write(type, values);
+        flush();
+    }
+
+    /**
+     * Adds a message with no values and sends it along with anything else that was written.
+     *
+     * @param type the type of the message
+     * @throws IOException if the messages cannot be sent
+     */
+    public void send(int type) throws IOException {
+        write(type);
+        flush();
+    }
+
+    /**
+     * Adds a message with one value and sends it along with anything else that was written.
+     *
+     * @param type the type of the message
+     * @param value the value of the message
+     * @throws IOException if the messages cannot be sent
+     */
+    public void send(int type, int value) throws IOException {
+        write(type, value);
+        flush();
+    }
+
+    /**
+     * Adds a message with two values and sends it along with anything else that was written.
+     *
+     * @param type the type of the message
+     * @param value1 the first value of the message
+     * @param value2 the second value of the message
+     * @throws IOException if the messages cannot be sent
+     */
+    public void send(int type, int value1, int value2) throws IOException {
+        write(type, value1, value2);
+        flush();
+    }
+
+    /**
+     * Gets the address of the other end of the connection.
+     *
+     * @return the address, which has not been looked up
+     */
+    public InetAddress getAddress() { return socket.getInetAddress(); }
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException if the socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException { socket.close(); }
+}
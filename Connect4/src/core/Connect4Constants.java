@@ -25,4 +25,5 @@ public interface Connect4Constants {
     int NOWIN = 12;
     int VALID = 13;
     int INVALID = 14;
+    int MOVE = 15;
 }
@@ -0,0 +1,114 @@
+/**
+ * This maps the difficulty levels a client can ask for to the compute budget of the computer player. The levels
+ * below the top one use the same engine, Connect4SearchPlayer, and only differ in how deep it may look, how many
+ * positions it may visit and how long it may take for one move, so the most CPU a session can use is set by its
+ * level. The top level plays with Connect4MctsPlayer instead, whose playouts use every thread and the whole time
+ * budget it is given, so it gets stronger with the cores of the host. The opening
+ * book and the endgame solver are only used at the top levels, since they make the computer play perfectly, and
+ * only the upper levels ponder on the human's time. The top levels also search with more than one thread, trading
+ * cores that would sit idle for a faster move.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4Difficulty implements Connect4Constants {
+    public static final int MINLEVEL = 1;
+    public static final int MAXLEVEL = 11;
+    // the level used when a client does not ask for one
+    public static final int DEFAULTLEVEL = 7;
+    // the lowest levels that play from the opening book and solve endgames exactly
+    public static final int BOOKLEVEL = 8;
+    public static final int ENDGAMELEVEL = 9;
+    // the lowest level that ponders while the human thinks
+    public static final int PONDERLEVEL = 6;
+    // the level that plays with Monte Carlo Tree Search, which does not use the book, the solver or pondering
+    public static final int MCTSLEVEL = 11;
+    // the most playouts the MCTS level runs for one move, which is usually cut short by its time budget
+    private static final int MCTSPLAYOUTS = 1000000;
+
+    // the search depth, node budget and time budget in milliseconds of each level, starting at level 1
+    // (the depth and node budget of the MCTS level are not used)
+    private static final int[] DEPTHS = {1, 2, 3, 4, 6, 8, 10, 12, 16, ROWS * COLUMNS, ROWS * COLUMNS};
+    private static final long[] NODES = {1000, 5000, 20000, 50000, 100000, 250000, 500000, 1000000, 2000000,
+            5000000, 5000000};
+    private static final long[] TIMES = {10, 10, 20, 20, 30, 40, 50, 100, 200, 500, 500};
+    // the number of threads that search each move, starting at level 1
+    private static final int[] THREADS = {1, 1, 1, 1, 1, 1, 1, 1, 2, 4, 4};
+
+    /* Only has static methods. */
+    private Connect4Difficulty() {}
+
+    /**
+     * Keeps a level between MINLEVEL and a maximum, such as a cap set by the server.
+     *
+     * @param level the level asked for
+     * @param maxLevel the highest level allowed, at most MAXLEVEL
+     * @return the level to use
+     */
+    public static int clamp(int level, int maxLevel) {
+        return Math.max(MINLEVEL, Math.min(Math.min(maxLevel, MAXLEVEL), level));
+    }
+
+    /**
+     * Gets how many moves ahead the computer looks at most at a level.
+     *
+     * @param level a level from MINLEVEL to MAXLEVEL
+     * @return the search depth
+     */
+    public static int getDepth(int level) { return DEPTHS[clamp(level, MAXLEVEL) - 1]; }
+
+    /**
+     * Gets the most positions the computer visits for one move at a level.
+     *
+     * @param level a level from MINLEVEL to MAXLEVEL
+     * @return the node budget
+     */
+    public static long getNodeBudget(int level) { return NODES[clamp(level, MAXLEVEL) - 1]; }
+
+    /**
+     * Gets the most milliseconds the computer takes for one move at a level.
+     *
+     * @param level a level from MINLEVEL to MAXLEVEL
+     * @return the time budget
+     */
+    public static long getTimeBudget(int level) { return TIMES[clamp(level, MAXLEVEL) - 1]; }
+
+    /**
+     * Gets how many threads search each move at a level, counting the thread that asks for the move.
+     *
+     * @param level a level from MINLEVEL to MAXLEVEL
+     * @return the number of search threads
+     */
+    public static int getThreads(int level) { return THREADS[clamp(level, MAXLEVEL) - 1]; }
+
+    /**
+     * Creates a computer player for a level: an MCTS player at MCTSLEVEL, and otherwise a search player. The
+     * opening book and tablebase are only given to the player at the levels that use them.
+     *
+     * @param level a level from MINLEVEL to MAXLEVEL
+     * @param book the opening book, or null if there is none
+     * @param tablebase the tablebase of solved endgames, or null if there is none
+     * @param endgameMoves the fewest tokens on the board for the endgame solver to solve a position
+     * @return a computer player with the budgets of the level
+     */
+    public static Connect4Strategy createPlayer(int level, Connect4OpeningBook book, Connect4Tablebase tablebase,
+                                                int endgameMoves) {
+        level = clamp(level, MAXLEVEL);
+        if(level >= MCTSLEVEL) {
+            Connect4MctsPlayer mctsPlayer = new Connect4MctsPlayer(MCTSPLAYOUTS, getTimeBudget(level));
+            mctsPlayer.setThreads(getThreads(level));
+            return mctsPlayer;
+        }
+        Connect4SearchPlayer player = new Connect4SearchPlayer(getDepth(level), getNodeBudget(level),
+                getTimeBudget(level));
+        player.setThreads(getThreads(level));
+        if(level >= BOOKLEVEL)
+            player.setOpeningBook(book);
+        if(level >= ENDGAMELEVEL)
+            player.setEndgameSolver(endgameMoves, tablebase);
+        return player;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * This solves late positions exactly. Once enough of the board is filled, a search as deep as the number of empty
+ * spots only ever reaches won, lost or full boards, so its score is perfect play: whether the player whose turn it
+ * is wins, draws or loses, and in how many moves. Solved positions can be kept in a Connect4Tablebase so the next
+ * time they come up, in any session, they are a lookup instead of a search.
+ *
+ * A node budget keeps a solve from taking too long; if it runs out, the position is left unsolved and the caller
+ * should fall back to a normal search.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4EndgameSolver implements Connect4Constants {
+    // the outcomes of a solved position for the player whose turn it is
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    private int minMoves;
+    private long nodeBudget;
+    private Connect4TranspositionTable table;
+    private Connect4Tablebase tablebase;
+    private Connect4MoveOrdering ordering;
+    private int lastScore;
+
+    /**
+     * Creates a solver for positions with at least minMoves tokens on the board.
+     *
+     * @param minMoves the fewest tokens a position needs to be solved
+     * @param nodeBudget the most positions one solve may visit, or 0 for no limit
+     * @param table the transposition table to search with
+     * @param tablebase the tablebase to look up and store solved positions in, or null to not use one
+     */
+    public Connect4EndgameSolver(int minMoves, long nodeBudget, Connect4TranspositionTable table,
+                                 Connect4Tablebase tablebase) {
+        this.minMoves = minMoves;
+        this.nodeBudget = nodeBudget;
+        this.table = table;
+        this.tablebase = tablebase;
+        ordering = new Connect4MoveOrdering();
+        lastScore = 0;
+    }
+
+    /**
+     * Checks if a position is late enough for this solver.
+     *
+     * @param board the position
+     * @return true if the position has at least minMoves tokens
+     */
+    public boolean canSolve(Connect4Bitboard board) {
+        return board.getMoveCount() >= minMoves && board.getMoveCount() < ROWS * COLUMNS;
+    }
+
+    /**
+     * Finds the move with perfect play for the player whose turn it is, from the tablebase if the position is in
+     * it and by searching to the end of the game otherwise. A searched position is stored in the tablebase.
+     * The exact score can be read with getLastScore afterwards.
+     *
+     * @param board the position, which is put back the way it was
+     * @return the best column, or -1 if the position is too early or the node budget ran out
+     */
+    public int solve(Connect4Bitboard board) {
+        if(!canSolve(board))
+            return -1;
+
+        if(tablebase != null) {
+            int result = tablebase.lookup(board);
+            if(result != 0) {
+                lastScore = Connect4Tablebase.score(result);
+                return Connect4Tablebase.move(result);
+            }
+        }
+
+        Connect4Search search = new Connect4Search(board, nodeBudget, table, ordering);
+        int col = search.search(ROWS * COLUMNS - board.getMoveCount());
+        if(search.isAborted() || col == -1)
+            return -1;
+
+        lastScore = search.getBestScore();
+        if(tablebase != null)
+            tablebase.store(board, lastScore, col);
+        return col;
+    }
+
+    /**
+     * Gets the exact score of the last position solved.
+     *
+     * @return the score from Connect4Search of the last solved position
+     */
+    public int getLastScore() { return lastScore; }
+
+    /**
+     * Gets the outcome of an exact score.
+     *
+     * @param score an exact score from solve
+     * @return WIN, DRAW or LOSS for the player whose turn it is
+     */
+    public static int getOutcome(int score) {
+        if(score > 0)
+            return WIN;
+        else if(score < 0)
+            return LOSS;
+        else
+            return DRAW;
+    }
+
+    /**
+     * Gets how many more moves, counting both players, the game lasts with perfect play.
+     *
+     * @param score an exact score from solve
+     * @param moveCount the number of tokens on the board in the solved position
+     * @return the number of moves until the game is won, lost or the board is full
+     */
+    public static int getDistance(int score, int moveCount) {
+        if(score == 0)
+            return ROWS * COLUMNS - moveCount;
+        // a win on move number m (counting from 1) scores WIN_SCORE + ROWS * COLUMNS + 1 - m
+        int lastMove = Connect4Search.WIN_SCORE + ROWS * COLUMNS + 1 - Math.abs(score);
+        return lastMove - moveCount;
+    }
+}
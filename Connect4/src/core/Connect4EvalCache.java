@@ -0,0 +1,258 @@
+/**
+ * This is a cache of search results shared by every computer player in the server, so a position searched for one
+ * session does not have to be searched again for another. Sessions often reach the same positions, especially in
+ * the opening. Each player still has its own transposition table; Connect4Search only turns to this cache for
+ * positions with at least MINDEPTH moves left to search, which are few but cost the most to search.
+ *
+ * Entries are kept in the same packed form as Connect4TranspositionTable. The cache is split into stripes by key,
+ * each with its own lock, so players looking up different positions rarely wait for each other. Each stripe is an
+ * open-addressed hash table of plain arrays, at most half full, so a lookup or a store in the search makes no
+ * garbage. Each stripe holds a fixed number of entries and evicts with the CLOCK algorithm: every entry has a bit
+ * that is set when it is used, and a hand sweeps the table clearing the bits until it finds an entry that has not
+ * been used since the last sweep. Hits and misses are counted for monitoring.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Connect4EvalCache {
+    // the fewest moves left to search for a result to be looked up in or put in the cache
+    public static final int MINDEPTH = 5;
+    // the number of entries in the default cache
+    public static final int DEFAULTCAPACITY = 1 << 18;
+    // the number of stripes, a power of two that is more than the number of threads searching at once
+    private static final int STRIPES = 64;
+
+    private Stripe[] stripes;
+    private LongAdder hits;
+    private LongAdder misses;
+
+    /**
+     * Creates a cache with the default capacity.
+     */
+    public Connect4EvalCache() {
+        this(DEFAULTCAPACITY);
+    }
+
+    /**
+     * Creates a cache that holds about the given number of entries, split evenly between the stripes.
+     *
+     * @param capacity the most entries to keep
+     */
+    public Connect4EvalCache(int capacity) {
+        stripes = new Stripe[STRIPES];
+        for(int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(Math.max(1, capacity / STRIPES));
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Looks a position up in the cache.
+     *
+     * @param key the key of the position (see Connect4Bitboard.getKey)
+     * @return the packed entry for the position (see Connect4TranspositionTable), or 0 if it is not in the cache
+     */
+    public long get(long key) {
+        long entry = stripe(key).get(key);
+        if(entry != 0)
+            hits.increment();
+        else
+            misses.increment();
+        return entry;
+    }
+
+    /**
+     * Puts a search result in the cache. A result already in the cache is only replaced by one searched at least
+     * as deep.
+     *
+     * @param key the key of the position (see Connect4Bitboard.getKey)
+     * @param score the score of the position
+     * @param bound EXACT, LOWERBOUND or UPPERBOUND from Connect4TranspositionTable
+     * @param move the best move found, or -1 if there is none
+     * @param depth how many moves ahead the position was searched
+     */
+    public void put(long key, int score, int bound, int move, int depth) {
+        stripe(key).put(key, Connect4TranspositionTable.pack(score, bound, move, depth, 0));
+    }
+
+    /**
+     * Empties the cache and sets the counters back to 0.
+     */
+    public void clear() {
+        for(Stripe stripe : stripes)
+            stripe.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * Gets the number of lookups that found their position.
+     *
+     * @return the number of hits since the cache was made or cleared
+     */
+    public long getHits() { return hits.sum(); }
+
+    /**
+     * Gets the number of lookups that did not find their position.
+     *
+     * @return the number of misses since the cache was made or cleared
+     */
+    public long getMisses() { return misses.sum(); }
+
+    /**
+     * Gets the number of positions in the cache.
+     *
+     * @return the number of entries
+     */
+    public int getSize() {
+        int size = 0;
+        for(Stripe stripe : stripes)
+            size += stripe.size();
+        return size;
+    }
+
+    /* Finds the stripe a key belongs to. */
+    private Stripe stripe(long key) {
+        return stripes[(int) (hash(key) >>> 32) & (STRIPES - 1)];
+    }
+
+    /* Mixes the bits of a key, so keys of nearby positions spread over the stripes and slots. */
+    private static long hash(long key) { return key * 0x9E3779B97F4A7C15L; }
+
+    /* One stripe of the cache: a hash table with linear probing, where a key of 0 marks an empty slot (no position
+       has the key 0), and the CLOCK hand. */
+    private static class Stripe {
+        private ReentrantLock lock;
+        private long[] keys;
+        private long[] entries;
+        private boolean[] used;
+        private int mask;
+        private int shift;
+        private int capacity;
+        private int count;
+        private int hand;
+
+        private Stripe(int capacity) {
+            lock = new ReentrantLock();
+            // at least twice as many slots as entries, so probes stay short
+            int slots = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+            keys = new long[slots];
+            entries = new long[slots];
+            used = new boolean[slots];
+            mask = slots - 1;
+            // the top bits of the hash pick the slot, since lower ones pick the stripe
+            shift = 64 - Integer.numberOfTrailingZeros(slots);
+            this.capacity = capacity;
+            count = 0;
+            hand = 0;
+        }
+
+        private long get(long key) {
+            lock.lock();
+            try {
+                int slot = find(key);
+                if(keys[slot] == 0)
+                    return 0;
+                used[slot] = true;
+                return entries[slot];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put(long key, long entry) {
+            lock.lock();
+            try {
+                int slot = find(key);
+                if(keys[slot] != 0) {
+                    if(Connect4TranspositionTable.depth(entry) >= Connect4TranspositionTable.depth(entries[slot]))
+                        entries[slot] = entry;
+                    used[slot] = true;
+                    return;
+                }
+
+                if(count == capacity) {
+                    evict();
+                    slot = find(key);
+                }
+                keys[slot] = key;
+                entries[slot] = entry;
+                used[slot] = false;
+                count++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /* Finds the slot of a key, or the empty slot where it would go. */
+        private int find(long key) {
+            int slot = home(key);
+            while(keys[slot] != 0 && keys[slot] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private int home(long key) { return (int) (hash(key) >>> shift) & mask; }
+
+        /* Sweeps until an entry that has not been used since the last sweep turns up, and removes it. */
+        private void evict() {
+            while(keys[hand] == 0 || used[hand]) {
+                used[hand] = false;
+                hand = (hand + 1) & mask;
+            }
+            remove(hand);
+            count--;
+        }
+
+        /* Empties a slot and moves later entries of the same probe run back, so every entry can still be found
+           from its home slot without leaving markers behind. */
+        private void remove(int slot) {
+            int empty = slot;
+            int next = slot;
+            while(true) {
+                next = (next + 1) & mask;
+                if(keys[next] == 0)
+                    break;
+                int home = home(keys[next]);
+                // an entry whose home is after the empty slot, going round the table, has to stay where it is
+                boolean stays = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+                if(stays)
+                    continue;
+                keys[empty] = keys[next];
+                entries[empty] = entries[next];
+                used[empty] = used[next];
+                empty = next;
+            }
+            keys[empty] = 0;
+            used[empty] = false;
+        }
+
+        private void clear() {
+            lock.lock();
+            try {
+                Arrays.fill(keys, 0L);
+                Arrays.fill(used, false);
+                count = 0;
+                hand = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
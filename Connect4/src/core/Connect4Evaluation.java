@@ -0,0 +1,129 @@
+/**
+ * This is the static evaluation used by Connect4Search at the depth limit. The 69 ways to get four-in-a-row
+ * (24 horizontal, 21 vertical and 24 diagonal) are worked out once as bitboard masks. Lines going the same way
+ * are scored all at once: the board is shifted along the line so each line's four spots land on its first spot,
+ * and a few word operations count the tokens in every line together, with no loops over spots or bounds checks.
+ * A line only counts for a player if the other player has no token in it: one token is worth a little, two (an
+ * open two) more, and three (an open three, or a threat) a lot.
+ *
+ * Threats are also scored by the row they are on. Tokens fill the board from the bottom, so when play runs out
+ * elsewhere, the first player can usually force a threat on an odd row (counting the bottom row as 1) and the
+ * second player one on an even row. Threats on the player's own kind of row get a bonus.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4Evaluation implements Connect4Constants {
+    // every line of four spots on the board
+    static final long[] LINES = lines();
+    // how far apart the spots of a line are for each way a line can go: up, down-right, right and up-right
+    private static final int[] SHIFTS = {1, Connect4Bitboard.COLUMN_HEIGHT - 1, Connect4Bitboard.COLUMN_HEIGHT,
+            Connect4Bitboard.COLUMN_HEIGHT + 1};
+    // the first spot of every line going each way
+    private static final long[] STARTS = starts();
+    // how much a line is worth with 0, 1, 2 or 3 tokens of only one player in it
+    private static final int[] LINEWEIGHTS = {0, 1, 5, 20};
+    // bonus for each threat on a row that suits the player
+    private static final int PARITYWEIGHT = 30;
+    // odd rows counting the bottom row as 1, which suit player X, and even rows, which suit player O
+    private static final long ODDROWS = Connect4Bitboard.BOTTOM_MASK * 0x15;
+    private static final long EVENROWS = Connect4Bitboard.BOTTOM_MASK * 0x2A;
+
+    /* Only has static methods. */
+    private Connect4Evaluation() {}
+
+    /**
+     * Scores a position for the player whose turn it is. The score is always between -WIN_SCORE and
+     * WIN_SCORE of Connect4Search, since it does not look for wins.
+     *
+     * @param board the position to score
+     * @return the heuristic score of the position, higher when it is better for the player to move
+     */
+    public static int evaluate(Connect4Bitboard board) {
+        return evaluate(board.getCurrentPlayerBoard(), board.getOpponentBoard(), board.getWhoseTurn() == PLAYERX);
+    }
+
+    /**
+     * Scores a position given as the bitboards of the two players.
+     *
+     * @param mine the tokens of the player whose turn it is
+     * @param theirs the tokens of the other player
+     * @param firstPlayer true if the player whose turn it is went first (player X)
+     * @return the heuristic score of the position for the player whose turn it is
+     */
+    public static int evaluate(long mine, long theirs, boolean firstPlayer) {
+        int score = 0;
+        for(int i = 0; i < SHIFTS.length; i++) {
+            int shift = SHIFTS[i];
+            long mineInLine = mine | (mine >>> shift) | (mine >>> (2 * shift)) | (mine >>> (3 * shift));
+            long theirsInLine = theirs | (theirs >>> shift) | (theirs >>> (2 * shift)) | (theirs >>> (3 * shift));
+            score += scoreLines(mine, shift, STARTS[i] & ~theirsInLine);
+            score -= scoreLines(theirs, shift, STARTS[i] & ~mineInLine);
+        }
+
+        long mask = mine | theirs;
+        long myThreats = Connect4Bitboard.winningSpots(mine, mask);
+        long theirThreats = Connect4Bitboard.winningSpots(theirs, mask);
+        long myRows = firstPlayer ? ODDROWS : EVENROWS;
+        long theirRows = firstPlayer ? EVENROWS : ODDROWS;
+        score += PARITYWEIGHT * (Long.bitCount(myThreats & myRows) - Long.bitCount(theirThreats & theirRows));
+
+        return Math.max(-Connect4Search.WIN_SCORE + 1, Math.min(Connect4Search.WIN_SCORE - 1, score));
+    }
+
+    /* Adds up the weights of the lines that start on the given spots, counting the player's tokens in all of them
+       at once. Each bit of ones, twos and fours holds that bit of the count for the line starting there. */
+    private static int scoreLines(long board, int shift, long starts) {
+        long a = board;
+        long b = board >>> shift;
+        long c = board >>> (2 * shift);
+        long d = board >>> (3 * shift);
+        long ones = a ^ b ^ c ^ d;
+        long abCarry = a & b;
+        long cdCarry = c & d;
+        long pairCarry = (a ^ b) & (c ^ d);
+        long twos = abCarry ^ cdCarry ^ pairCarry;
+        return LINEWEIGHTS[1] * Long.bitCount(starts & ones & ~twos)
+                + LINEWEIGHTS[2] * Long.bitCount(starts & ~ones & twos)
+                + LINEWEIGHTS[3] * Long.bitCount(starts & ones & twos);
+    }
+
+    /* Sorts the first spot of every line by which way the line goes. */
+    private static long[] starts() {
+        long[] starts = new long[SHIFTS.length];
+        for(long line : LINES) {
+            int first = Long.numberOfTrailingZeros(line);
+            int shift = Long.numberOfTrailingZeros(line & (line - 1)) - first;
+            for(int i = 0; i < SHIFTS.length; i++) {
+                if(SHIFTS[i] == shift)
+                    starts[i] |= 1L << first;
+            }
+        }
+        return starts;
+    }
+
+    /* Builds the mask of every line of four spots, going right, up, up-right and down-right from each spot. */
+    private static long[] lines() {
+        long[] lines = new long[69];
+        int count = 0;
+        int[][] directions = {{0, 1}, {-1, 0}, {-1, 1}, {1, 1}};
+        for(int[] direction : directions) {
+            for(int row = 0; row < ROWS; row++) {
+                for(int col = 0; col < COLUMNS; col++) {
+                    int endRow = row + 3 * direction[0];
+                    int endCol = col + 3 * direction[1];
+                    if(endRow < 0 || endRow >= ROWS || endCol >= COLUMNS)
+                        continue;
+                    long line = 0L;
+                    for(int i = 0; i < 4; i++)
+                        line |= Connect4Bitboard.cellMask(row + i * direction[0], col + i * direction[1]);
+                    lines[count++] = line;
+                }
+            }
+        }
+        return lines;
+    }
+}
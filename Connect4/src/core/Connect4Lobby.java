@@ -0,0 +1,134 @@
+/**
+ * This pairs up players who asked for a human opponent. A player who joins is matched with the player who has
+ * waited longest, or else waits in the queue for the next one to join. The player who waited becomes player X and
+ * their thread runs the game, so the thread that accepts connections never waits for a partner. A player nobody
+ * joins within the timeout is taken out of the queue, so the server can close their connection or give them a
+ * computer opponent instead. A server that must not block, such as Connect4NioServer, waits on the ticket itself
+ * and gives up when its own timer runs out.
+ *
+ * The lobby does not know about sockets: the player type is whatever the server uses for a connection.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Connect4Lobby<T> {
+    // how long a player waits for an opponent by default, in milliseconds
+    public static final long DEFAULTTIMEOUT = 60000;
+
+    // the players waiting for an opponent, longest waiting first, each as the future their partner completes
+    private ArrayDeque<CompletableFuture<T>> waiting;
+    private ReentrantLock lock;
+    private long timeout;
+
+    /**
+     * Creates a lobby with the default timeout.
+     */
+    public Connect4Lobby() {
+        this(DEFAULTTIMEOUT);
+    }
+
+    /**
+     * Creates a lobby.
+     *
+     * @param timeout how many milliseconds a player waits for an opponent before giving up
+     */
+    public Connect4Lobby(long timeout) {
+        waiting = new ArrayDeque<>();
+        lock = new ReentrantLock();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Adds a player to the lobby. If a player is waiting, the two are matched and the waiting player's thread is
+     * handed this player as player O. Otherwise this player waits as player X, and the caller must pass the ticket
+     * that is returned to awaitOpponent, or wait on it without blocking and call giveUp when the timeout runs out.
+     *
+     * @param player the player who asked for a human opponent
+     * @return the ticket to wait on, or null if the player was matched with one already waiting
+     */
+    public CompletableFuture<T> join(T player) {
+        lock.lock();
+        try {
+            CompletableFuture<T> ticket = waiting.poll();
+            if(ticket != null) {
+                ticket.complete(player);
+                return null;
+            }
+            ticket = new CompletableFuture<>();
+            waiting.add(ticket);
+            return ticket;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for another player to join, up to the timeout.
+     *
+     * @param ticket the ticket from join
+     * @return the opponent, who is player O, or null if nobody joined in time or the thread was interrupted
+     */
+    public T awaitOpponent(CompletableFuture<T> ticket) {
+        try {
+            return ticket.get(timeout, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException ex) {
+            return giveUp(ticket);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return giveUp(ticket);
+        } catch(ExecutionException ex) {
+            System.err.println(ex);
+            return giveUp(ticket);
+        }
+    }
+
+    /**
+     * Takes a waiting player out of the queue without blocking, unless someone matched them just as they gave up.
+     *
+     * @param ticket the ticket from join
+     * @return the opponent who matched the player just in time, or null if the player left the queue
+     */
+    public T giveUp(CompletableFuture<T> ticket) {
+        lock.lock();
+        try {
+            if(waiting.remove(ticket))
+                return null;
+        } finally {
+            lock.unlock();
+        }
+        return ticket.getNow(null);
+    }
+
+    /**
+     * Gets how long a player waits for an opponent.
+     *
+     * @return the timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets the number of players waiting for an opponent.
+     *
+     * @return the length of the queue
+     */
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * This is the servers' connection log. Threads that log, such as the accept loop, only claim a slot in a ring
+ * buffer and put the event and its fields in it, so logging never waits for the console, the disk or the JavaFX
+ * thread. A thread of the log's own takes what has been logged every few milliseconds, formats it, and hands each
+ * batch to the sink in one piece. When the buffer is full, new events are dropped and counted rather than waited
+ * for, and the count is logged once there is room again.
+ *
+ * Events are structured: a name and pairs of field names and values, printed as one line each, for example
+ *
+ *     2026-01-01T12:00:00.000Z player.joined address=127.0.0.1
+ *
+ * An InetAddress is printed as its IP address, so logging one never looks up its host name.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public final class Connect4Log {
+    // the number of events the buffer holds by default, a power of two
+    public static final int DEFAULTCAPACITY = 1 << 14;
+    // how long the log's thread sleeps when there is nothing to take, in nanoseconds
+    private static final long FLUSHINTERVAL = 10000000L;
+    // the most events in one batch, so slots are given back to the threads that log while they keep logging
+    private static final int MAXBATCH = 1024;
+
+    private int mask;
+    private long[] times;
+    private String[] events;
+    private Object[][] fields;
+    // the sequence number plus 1 of the event last put in each slot, so a slot is only read once it is filled
+    private AtomicLongArray published;
+    private AtomicLong claimed;
+    private volatile long consumed;
+    private AtomicLong dropped;
+    private Consumer<String> sink;
+    private Thread thread;
+    private volatile boolean running;
+    // the time up to the second of the last event formatted, which most events share, such as 2026-01-01T12:00:00
+    private long lastSecond;
+    private String secondText;
+
+    /**
+     * Creates a log with the default capacity and starts its thread.
+     *
+     * @param sink takes each batch of formatted lines, on the log's thread
+     */
+    public Connect4Log(Consumer<String> sink) {
+        this(sink, DEFAULTCAPACITY);
+    }
+
+    /**
+     * Creates a log and starts its thread.
+     *
+     * @param sink takes each batch of formatted lines, on the log's thread
+     * @param capacity the most events that may wait to be formatted, rounded up to a power of two
+     */
+    public Connect4Log(Consumer<String> sink, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        events = new String[size];
+        fields = new Object[size][];
+        published = new AtomicLongArray(size);
+        claimed = new AtomicLong();
+        consumed = 0;
+        dropped = new AtomicLong();
+        this.sink = sink;
+        lastSecond = -1;
+        secondText = null;
+        running = true;
+        thread = new Thread(this::drain, "Connect4 log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates a log that prints to standard output.
+     *
+     * @return the log
+     */
+    public static Connect4Log toStandardOut() {
+        return new Connect4Log(batch -> {
+            System.out.print(batch);
+            System.out.flush();
+        });
+    }
+
+    /**
+     * Logs an event. It never blocks; if the buffer is full, the event is dropped.
+     *
+     * @param event the name of the event, such as player.joined
+     * @param fields pairs of field names and values
+     */
+    public void log(String event, Object... fields) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if(sequence - consumed > mask) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while(!claimed.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        times[slot] = System.currentTimeMillis();
+        events[slot] = event;
+        this.fields[slot] = fields;
+        published.set(slot, sequence + 1);
+    }
+
+    /**
+     * Gets the number of events dropped because the buffer was full.
+     *
+     * @return the number of dropped events since the log was made
+     */
+    public long getDropped() { return dropped.get(); }
+
+    /**
+     * Writes out what has been logged and stops the log's thread. Events logged afterwards are not written.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* The log's thread: formats the events that are ready, up to MAXBATCH, and hands them to the sink as one batch. */
+    private void drain() {
+        long next = 0;
+        long droppedBefore = 0;
+        while(true) {
+            StringBuilder batch = new StringBuilder();
+            int count = 0;
+            int slot;
+            while(count++ < MAXBATCH && published.get(slot = (int) next & mask) == next + 1) {
+                format(batch, times[slot], events[slot], fields[slot]);
+                events[slot] = null;
+                fields[slot] = null;
+                next++;
+            }
+            consumed = next;
+
+            long droppedNow = dropped.get();
+            if(droppedNow != droppedBefore) {
+                format(batch, System.currentTimeMillis(), "log.dropped", new Object[] {"count",
+                        droppedNow - droppedBefore});
+                droppedBefore = droppedNow;
+            }
+
+            if(batch.length() > 0)
+                sink.accept(batch.toString());
+            else if(!running)
+                return;
+            else
+                LockSupport.parkNanos(this, FLUSHINTERVAL);
+        }
+    }
+
+    /* Formats one event as a line. */
+    private void format(StringBuilder batch, long time, String event, Object[] fields) {
+        long second = Math.floorDiv(time, 1000);
+        if(second != lastSecond) {
+            String text = Instant.ofEpochSecond(second).toString();
+            secondText = text.substring(0, text.length() - 1);
+            lastSecond = second;
+        }
+        int millis = Math.floorMod(time, 1000);
+        batch.append(secondText).append('.');
+        batch.append((char) ('0' + millis / 100)).append((char) ('0' + millis / 10 % 10)).append((char) ('0' + millis % 10));
+        batch.append("Z ").append(event);
+        for(int i = 0; i + 1 < fields.length; i += 2) {
+            Object value = fields[i + 1];
+            String text = value instanceof InetAddress ? ((InetAddress) value).getHostAddress()
+                    : String.valueOf(value);
+            batch.append(' ').append(fields[i]).append('=');
+            if(text.indexOf(' ') >= 0 || text.indexOf('=') >= 0)
+                batch.append('"').append(text).append('"');
+            else
+                batch.append(text);
+        }
+        batch.append('\n');
+    }
+}
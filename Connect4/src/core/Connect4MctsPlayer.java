@@ -0,0 +1,329 @@
+/**
+ * This is an AI for the Connect4 game that uses Monte Carlo Tree Search instead of a negamax search. It grows a
+ * tree of moves one position at a time, picking which branch to grow with UCT, and scores each new position by
+ * playing the game out to the end. The playouts are random except that a player always takes a win and blocks
+ * the other player's win when it can, which is a few bit operations on a pair of longs per move.
+ *
+ * The tree is kept between moves: when asked for the next move, the player looks for the new position two moves
+ * down the old tree and keeps searching from there. With more than one thread, every thread grows a tree of its
+ * own, and the visits of the moves at the top of the trees grown for the move are added up to pick it. The trees
+ * share nothing, so no locks are needed. Like the helper searches of Connect4SearchPlayer, the extra threads are
+ * borrowed from the free threads of a Connect4MovePool when the player has one, so the playouts count against the
+ * pool's threads, and otherwise run on the ForkJoinPool shared with Connect4SearchPlayer.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.concurrent.Future;
+
+public class Connect4MctsPlayer implements Connect4Strategy, Connect4Constants {
+    // the most playouts the default player runs for one move
+    public static final int DEFAULTPLAYOUTS = 20000;
+    // how much UCT favors moves that have been tried less
+    private static final double EXPLORATION = 1.0;
+    // the clock is only read once every this many playouts
+    private static final int CLOCKINTERVAL = 64;
+
+    private int playoutBudget;
+    private long timeBudget;
+    private Tree[] trees;
+    private Connect4MovePool helperPool;
+    private long lastPlayouts;
+
+    /**
+     * Creates an MCTS player with the default playout budget and no time limit.
+     */
+    public Connect4MctsPlayer() {
+        this(DEFAULTPLAYOUTS, 0);
+    }
+
+    /**
+     * Creates an MCTS player that runs up to a number of playouts for each move.
+     *
+     * @param playoutBudget the most playouts to run for one move, by all threads together
+     * @param timeBudget the most milliseconds to take for one move, or 0 for no limit
+     */
+    public Connect4MctsPlayer(int playoutBudget, long timeBudget) {
+        this.playoutBudget = Math.max(1, playoutBudget);
+        this.timeBudget = timeBudget;
+        trees = new Tree[] {new Tree(0)};
+        helperPool = null;
+        lastPlayouts = 0;
+    }
+
+    /**
+     * Searches the current board and returns the column whose move was tried the most. If a -1 is returned,
+     * the board is full.
+     *
+     * @param coord the coordinates of the last played token (by the other player), not used
+     * @param gameBoard is a 2D char array representing the current state of the game board
+     * @param gameLogic is a Connect4 object with the current state of the game, whose bitboard is searched
+     * @return an int representing the column where the computer will play its token
+     */
+    @Override
+    public int determineMove(int[] coord, char[][] gameBoard, Connect4 gameLogic) {
+        Connect4Bitboard board = Connect4SearchPlayer.boardOf(gameBoard, gameLogic);
+        for(int col = 0; col < COLUMNS; col++) {
+            if(board.canPlay(col) && board.isWinningMove(col))
+                return col;
+        }
+        if(board.getMask() == Connect4Bitboard.BOARD_MASK)
+            return -1;
+
+        long mine = board.getCurrentPlayerBoard();
+        long theirs = board.getOpponentBoard();
+        boolean hasDeadline = timeBudget > 0;
+        long deadline = System.nanoTime() + timeBudget * 1000000L;
+        // the share of each tree is set before the helpers start, so a busy pool means fewer playouts in all
+        int share = Math.max(1, playoutBudget / trees.length);
+
+        Future<?>[] tasks = Connect4SearchPlayer.runHelpers(helperPool, trees.length - 1, i -> {
+            Tree tree = trees[i + 1];
+            return () -> tree.search(mine, theirs, share, hasDeadline, deadline);
+        });
+        trees[0].search(mine, theirs, share, hasDeadline, deadline);
+        // a tree that has not got a thread by now, such as one queued behind a ponder, is dropped
+        for(Future<?> task : tasks)
+            Connect4SearchPlayer.drop(helperPool, task);
+        for(Future<?> task : tasks)
+            Connect4SearchPlayer.join(task);
+
+        // only the trees grown for this move count, since the others are rooted at an older position
+        int bestCol = -1;
+        long bestVisits = -1;
+        lastPlayouts = 0;
+        for(int col = 0; col < COLUMNS; col++) {
+            long visits = 0;
+            for(int i = 0; i <= tasks.length; i++) {
+                if(i > 0 && tasks[i - 1].isCancelled())
+                    continue;
+                Node child = trees[i].root.children[col];
+                if(child != null)
+                    visits += child.visits;
+            }
+            lastPlayouts += visits;
+            if(visits > bestVisits && board.canPlay(col)) {
+                bestVisits = visits;
+                bestCol = col;
+            }
+        }
+        return bestCol;
+    }
+
+    /**
+     * Sets how many threads run playouts for each move. Every thread grows its own tree, so changing the
+     * number of threads throws the trees kept from earlier moves away.
+     *
+     * @param threads the number of threads to search with, at least 1
+     */
+    public void setThreads(int threads) {
+        trees = new Tree[Math.max(1, threads)];
+        for(int i = 0; i < trees.length; i++)
+            trees[i] = new Tree(i);
+    }
+
+    /**
+     * Sets the move pool the extra threads borrow free threads from, so they count against its threads. A move
+     * is then searched by fewer threads than setThreads asked for when the pool is busy.
+     *
+     * @param pool the move pool this player's moves are worked out on, or null to use the shared ForkJoinPool
+     */
+    public void setHelperPool(Connect4MovePool pool) { this.helperPool = pool; }
+
+    /**
+     * Gets the number of playouts behind the last move, by all threads together. Playouts kept from earlier
+     * moves are counted too.
+     *
+     * @return the number of playouts in the trees when the last move was picked
+     */
+    public long getLastPlayouts() { return lastPlayouts; }
+
+    /* A position in the tree. The score is for the player who made the move leading to it. */
+    private static class Node {
+        private Node[] children = new Node[COLUMNS];
+        private int untried; // a bit for every column that can be played but has no child yet
+        private int visits;
+        private double score;
+        private boolean terminal;
+        private double terminalScore;
+    }
+
+    /* The tree grown by one thread, and the position at its root. */
+    private static class Tree {
+        private Node root;
+        private long rootMine;
+        private long rootTheirs;
+        private Node[] path;
+        private long random;
+
+        private Tree(int index) {
+            root = null;
+            path = new Node[ROWS * COLUMNS + 1];
+            random = System.nanoTime() ^ (0x9E3779B97F4A7C15L * (index + 1));
+        }
+
+        /* Runs playouts from a position until the budget or the time runs out, keeping the old tree if the
+           position is in it. */
+        private void search(long mine, long theirs, int playouts, boolean hasDeadline, long deadline) {
+            reuseRoot(mine, theirs);
+            for(int i = 0; i < playouts && !root.terminal; i++) {
+                if(hasDeadline && i % CLOCKINTERVAL == 0 && System.nanoTime() - deadline > 0)
+                    break;
+                playout();
+            }
+        }
+
+        /* Makes the node for the position the root, looking for it up to two moves below the old root. */
+        private void reuseRoot(long mine, long theirs) {
+            if(root != null && rootMine == mine && rootTheirs == theirs)
+                return;
+            if(root != null) {
+                long mask = rootMine | rootTheirs;
+                for(int first = 0; first < COLUMNS; first++) {
+                    Node child = root.children[first];
+                    if(child == null)
+                        continue;
+                    long afterMine = rootTheirs;
+                    long afterTheirs = rootMine | dropBit(mask, first);
+                    long afterMask = mask | dropBit(mask, first);
+                    for(int second = 0; second < COLUMNS; second++) {
+                        Node grandchild = child.children[second];
+                        if(grandchild != null && afterTheirs == mine
+                                && (afterMine | dropBit(afterMask, second)) == theirs) {
+                            root = grandchild;
+                            rootMine = mine;
+                            rootTheirs = theirs;
+                            return;
+                        }
+                    }
+                }
+            }
+            root = newNode(mine, theirs, 0L);
+            rootMine = mine;
+            rootTheirs = theirs;
+        }
+
+        /* Walks down the tree with UCT, adds one position, plays it out and adds the result to every node on
+           the way back up. */
+        private void playout() {
+            long mine = rootMine;
+            long theirs = rootTheirs;
+            Node node = root;
+            int depth = 0;
+            path[0] = root;
+
+            while(!node.terminal && node.untried == 0) {
+                int col = select(node);
+                long move = dropBit(mine | theirs, col);
+                long mover = mine | move;
+                mine = theirs;
+                theirs = mover;
+                node = node.children[col];
+                path[++depth] = node;
+            }
+
+            double result;
+            if(node.terminal)
+                result = node.terminalScore;
+            else {
+                int col = randomBit(node.untried);
+                node.untried &= ~(1 << col);
+                long move = dropBit(mine | theirs, col);
+                Node child = newNode(theirs, mine | move, move);
+                node.children[col] = child;
+                path[++depth] = child;
+                result = child.terminal ? child.terminalScore : 1.0 - rollout(theirs, mine | move);
+            }
+
+            for(int i = depth; i >= 0; i--) {
+                path[i].visits++;
+                path[i].score += result;
+                result = 1.0 - result;
+            }
+        }
+
+        /* Picks the child with the best UCT value. Every child of the node has been made. */
+        private int select(Node node) {
+            double logVisits = Math.log(node.visits);
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for(int col = 0; col < COLUMNS; col++) {
+                Node child = node.children[col];
+                if(child == null)
+                    continue;
+                double value = child.score / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+                if(value > bestValue) {
+                    bestValue = value;
+                    best = col;
+                }
+            }
+            return best;
+        }
+
+        /* Plays a position out to the end, taking wins and blocking the other player's wins, and otherwise
+           playing randomly. Gives 1 if the player to move wins, 0 if they lose and 0.5 for a tie. */
+        private double rollout(long mine, long theirs) {
+            boolean sideToMove = true;
+            while(true) {
+                long mask = mine | theirs;
+                if(mask == Connect4Bitboard.BOARD_MASK)
+                    return 0.5;
+                long possible = (mask + Connect4Bitboard.BOTTOM_MASK) & Connect4Bitboard.BOARD_MASK;
+                if((Connect4Bitboard.winningSpots(mine, mask) & possible) != 0)
+                    return sideToMove ? 1.0 : 0.0;
+
+                long blocks = Connect4Bitboard.winningSpots(theirs, mask) & possible;
+                long move;
+                if(blocks != 0)
+                    move = Long.lowestOneBit(blocks);
+                else
+                    move = 1L << randomBit(possible);
+                long mover = mine | move;
+                mine = theirs;
+                theirs = mover;
+                sideToMove = !sideToMove;
+            }
+        }
+
+        /* Makes a node for a position, where theirs holds the tokens of the player who just moved. */
+        private Node newNode(long mine, long theirs, long move) {
+            Node node = new Node();
+            long mask = mine | theirs;
+            if(move != 0 && Connect4Bitboard.hasFourInARow(theirs)) {
+                node.terminal = true;
+                node.terminalScore = 1.0;
+            }
+            else if(mask == Connect4Bitboard.BOARD_MASK) {
+                node.terminal = true;
+                node.terminalScore = 0.5;
+            }
+            else {
+                for(int col = 0; col < COLUMNS; col++) {
+                    if((mask & Connect4Bitboard.topMask(col)) == 0)
+                        node.untried |= 1 << col;
+                }
+            }
+            return node;
+        }
+
+        /* Picks one of the set bits of a mask at random and gives its index. */
+        private int randomBit(long bits) {
+            // xorshift, which is much cheaper than a Random and is only ever used by one thread
+            random ^= random << 13;
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int skip = (int) ((random >>> 1) % Long.bitCount(bits));
+            for(int i = 0; i < skip; i++)
+                bits &= bits - 1;
+            return Long.numberOfTrailingZeros(bits);
+        }
+
+        /* Gives the bit a token dropped in a column lands on. */
+        private static long dropBit(long mask, int col) {
+            return (mask + Connect4Bitboard.bottomMask(col)) & Connect4Bitboard.columnMask(col);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * This is one message of the protocol between the client and the servers. On the wire every message is a frame:
+ * an int with the number of bytes that follow, a byte with the type of the message (one of the constants in
+ * Connect4Constants, such as VALID or NOWIN), and then the values of the message as ints. A move the player has to
+ * see travels in the same frame as the outcome it led to, so a turn is one frame instead of several loose ints:
+ *
+ *     client to server: COMPUTEROPPONENT level, PLAYEROPPONENT, MOVE col
+ *     server to client: PLAYERX, PLAYERO, PLAYERXTURN, INVALID, VALID row col, and PLAYERXWON, PLAYEROWON, TIE
+ *                       or NOWIN, followed by row col when they come with the other player's move
+ *
+ * Frames are read and written both on streams, for the blocking server and the client, and on byte buffers, for
+ * the NIO server.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class Connect4Message {
+    // the most values a message may have, so a broken frame cannot make a reader allocate much
+    public static final int MAXVALUES = 8;
+    // the size of the length and the type at the start of every frame
+    private static final int HEADERSIZE = 5;
+
+    private int type;
+    private int[] values;
+
+    /**
+     * Creates a message.
+     *
+     * @param type the type of the message
+     * @param values the values of the message
+     */
+    public Connect4Message(int type, int... values) {
+        this.type = type;
+        this.values = values;
+    }
+
+    /**
+     * Gets the type of the message.
+     *
+     * @return one of the message constants in Connect4Constants
+     */
+    public int getType() { return type; }
+
+    /**
+     * Gets one of the values of the message.
+     *
+     * @param index the index of the value, starting at 0
+     * @return the value
+     */
+    public int getValue(int index) { return values[index]; }
+
+    /**
+     * Gets the number of values the message has.
+     *
+     * @return the number of values
+     */
+    public int getValueCount() { return values.length; }
+
+    /**
+     * Gets the number of bytes a message takes on the wire.
+     *
+     * @param valueCount the number of values of the message
+     * @return the size of the frame
+     */
+    public static int frameSize(int valueCount) { return HEADERSIZE + valueCount * 4; }
+
+    /**
+     * Writes a message as a frame. The frame is not flushed, so several messages can go out in one write. Messages
+     * with up to two values, which is every message of the protocol, go through the overloads below, so sending one
+     * does not allocate an array.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param type the type of the message
+     * @param values the values of the message
+     * @throws IOException if the frame cannot be written
+     */
+    public static void write(DataOutputStream out, int type, int... values) throws IOException {
+        writeHeader(out, type, values.length);
+        for(int value : values)
+            out.writeInt(value);
+    }
+
+    /**
+     * Writes a message with no values as a frame.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param type the type of the message
+     * @throws IOException if the frame cannot be written
+     */
+    public static void write(DataOutputStream out, int type) throws IOException {
+        writeHeader(out, type, 0);
+    }
+
+    /**
+     * Writes a message with one value as a frame.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param type the type of the message
+     * @param value the value of the message
+     * @throws IOException if the frame cannot be written
+     */
+    public static void write(DataOutputStream out, int type, int value) throws IOException {
+        writeHeader(out, type, 1);
+        out.writeInt(value);
+    }
+
+    /**
+     * Writes a message with two values, such as a row and a column, as a frame.
+     *
+     * @param out the stream to write to, which should be buffered
+     * @param type the type of the message
+     * @param value1 the first value of the message
+     * @param value2 the second value of the message
+     * @throws IOException if the frame cannot be written
+     */
+    public static void write(DataOutputStream out, int type, int value1, int value2) throws IOException {
+        writeHeader(out, type, 2);
+        out.writeInt(value1);
+        out.writeInt(value2);
+    }
+
+    /**
+     * Writes a message as a frame into a buffer. As with streams, messages with up to two values go through the
+     * overloads below without allocating an array.
+     *
+     * @param out the buffer to write to, which must have frameSize bytes left
+     * @param type the type of the message
+     * @param values the values of the message
+     */
+    public static void write(ByteBuffer out, int type, int... values) {
+        writeHeader(out, type, values.length);
+        for(int value : values)
+            out.putInt(value);
+    }
+
+    /**
+     * Writes a message with no values as a frame into a buffer.
+     *
+     * @param out the buffer to write to, which must have frameSize bytes left
+     * @param type the type of the message
+     */
+    public static void write(ByteBuffer out, int type) {
+        writeHeader(out, type, 0);
+    }
+
+    /**
+     * Writes a message with one value as a frame into a buffer.
+     *
+     * @param out the buffer to write to, which must have frameSize bytes left
+     * @param type the type of the message
+     * @param value the value of the message
+     */
+    public static void write(ByteBuffer out, int type, int value) {
+        writeHeader(out, type, 1);
+        out.putInt(value);
+    }
+
+    /**
+     * Writes a message with two values as a frame into a buffer.
+     *
+     * @param out the buffer to write to, which must have frameSize bytes left
+     * @param type the type of the message
+     * @param value1 the first value of the message
+     * @param value2 the second value of the message
+     */
+    public static void write(ByteBuffer out, int type, int value1, int value2) {
+        writeHeader(out, type, 2);
+        out.putInt(value1);
+        out.putInt(value2);
+    }
+
+    /**
+     * Reads a frame, waiting for all of it.
+     *
+     * @param in the stream to read from
+     * @return the message in the frame
+     * @throws IOException if the stream ends or the frame is not a valid message
+     */
+    public static Connect4Message read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        int[] values = new int[valueCount(length)];
+        int type = in.readUnsignedByte();
+        for(int i = 0; i < values.length; i++)
+            values[i] = in.readInt();
+        return new Connect4Message(type, values);
+    }
+
+    /**
+     * Reads a frame from a buffer if all of it is there. The buffer is left as it was if the frame is not complete.
+     *
+     * @param in the buffer to read from, ready for reading
+     * @return the message in the frame, or null if the buffer does not hold the whole frame yet
+     * @throws IOException if the frame is not a valid message
+     */
+    public static Connect4Message read(ByteBuffer in) throws IOException {
+        if(in.remaining() < 4)
+            return null;
+        int length = in.getInt(in.position());
+        int valueCount = valueCount(length);
+        // a frame that has not all arrived yet is read again from the start later, so nothing is allocated for it
+        if(in.remaining() < 4 + length)
+            return null;
+        int[] values = new int[valueCount];
+
+        in.getInt();
+        int type = in.get() & 0xFF;
+        for(int i = 0; i < values.length; i++)
+            values[i] = in.getInt();
+        return new Connect4Message(type, values);
+    }
+
+    /* Writes the length and the type at the start of a frame. */
+    private static void writeHeader(DataOutputStream out, int type, int valueCount) throws IOException {
+        out.writeInt(frameSize(valueCount) - 4);
+        out.writeByte(type);
+    }
+
+    /* Writes the length and the type at the start of a frame into a buffer. */
+    private static void writeHeader(ByteBuffer out, int type, int valueCount) {
+        out.putInt(frameSize(valueCount) - 4);
+        out.put((byte) type);
+    }
+
+    /* Works out the number of values from the length of a frame, checking that it is one a message can have. */
+    private static int valueCount(int length) throws IOException {
+        if(length < 1 || length > frameSize(MAXVALUES) - 4 || (length - 1) % 4 != 0)
+            throw new IOException("bad frame length " + length);
+        return (length - 1) / 4;
+    }
+}
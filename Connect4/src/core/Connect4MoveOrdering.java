@@ -0,0 +1,142 @@
+/**
+ * This decides the order the search tries moves in. Alpha-beta cuts off more of the tree the sooner it tries the
+ * best move, so moves are tried in this order: the best move the transposition table has for the position, the two
+ * killer moves (moves that caused a cutoff at the same number of tokens on the board), then the rest by their
+ * history score (how often and how deep a move to that spot has caused a cutoff), with ties going to the column
+ * closest to the center.
+ *
+ * One ordering belongs to one search thread; it is not safe to share between threads.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4MoveOrdering implements Connect4Constants {
+    // columns from the center out, since center tokens are part of the most four-in-a-rows
+    public static final int[] CENTERORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    private int[][] killers;
+    private int[][] history;
+    private int[] scores;
+
+    /**
+     * Creates an ordering with no killer moves or history yet.
+     */
+    public Connect4MoveOrdering() {
+        killers = new int[ROWS * COLUMNS + 1][2];
+        history = new int[2][COLUMNS * Connect4Bitboard.COLUMN_HEIGHT];
+        scores = new int[COLUMNS]; // scores of the moves being sorted, kept so sorting does not make garbage
+        clear();
+    }
+
+    /**
+     * Fills an array with the columns that can be played, in the order they should be tried.
+     *
+     * @param board the position the moves are for
+     * @param bestMove the best move stored for the position, or -1 if there is none
+     * @param moves an array of at least COLUMNS ints to put the columns in
+     * @return the number of columns put in the array
+     */
+    public int orderMoves(Connect4Bitboard board, int bestMove, int[] moves) {
+        return orderMoves(board, bestMove, moves, board.possibleMoves());
+    }
+
+    /**
+     * Does the same as orderMoves(board, bestMove, moves), but only puts in the columns whose landing spot is in
+     * a set of moves, such as the ones from Connect4Bitboard.nonLosingMoves.
+     *
+     * @param board the position the moves are for
+     * @param bestMove the best move stored for the position, or -1 if there is none
+     * @param moves an array of at least COLUMNS ints to put the columns in
+     * @param allowed a long with a bit set for the landing spot of every move to put in
+     * @return the number of columns put in the array
+     */
+    public int orderMoves(Connect4Bitboard board, int bestMove, int[] moves, long allowed) {
+        int ply = board.getMoveCount();
+        int side = board.getWhoseTurn() == PLAYERX ? 0 : 1;
+        int count = 0;
+
+        for(int i = 0; i < COLUMNS; i++) {
+            int col = CENTERORDER[i];
+            if((allowed & Connect4Bitboard.columnMask(col)) == 0)
+                continue;
+
+            int score;
+            if(col == bestMove)
+                score = Integer.MAX_VALUE;
+            else if(col == killers[ply][0])
+                score = Integer.MAX_VALUE - 2;
+            else if(col == killers[ply][1])
+                score = Integer.MAX_VALUE - 3;
+            else
+                score = history[side][spot(board, col)];
+
+            // insertion sort, keeping the center order for equal scores
+            int j = count;
+            while(j > 0 && scores[j - 1] < score) {
+                moves[j] = moves[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            moves[j] = col;
+            scores[j] = score;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Records that a move caused a beta cutoff, making it a killer move for positions with the same number of
+     * tokens and raising its history score. Deeper cutoffs saved more work, so they raise it more.
+     *
+     * @param board the position the move was made in (before the move)
+     * @param col the column of the move
+     * @param depth how deep the position was being searched
+     */
+    public void recordCutoff(Connect4Bitboard board, int col, int depth) {
+        int ply = board.getMoveCount();
+        if(killers[ply][0] != col) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = col;
+        }
+
+        int side = board.getWhoseTurn() == PLAYERX ? 0 : 1;
+        int spot = spot(board, col);
+        history[side][spot] += depth * depth;
+        if(history[side][spot] > Integer.MAX_VALUE / 4)
+            ageHistory();
+    }
+
+    /**
+     * Halves all the history scores, so newer cutoffs count for more than old ones. This
+     * is done between moves so the ordering follows the game.
+     */
+    public void ageHistory() {
+        for(int side = 0; side < 2; side++) {
+            for(int spot = 0; spot < history[side].length; spot++)
+                history[side][spot] /= 2;
+        }
+    }
+
+    /**
+     * Forgets all the killer moves and history scores.
+     */
+    public final void clear() {
+        for(int ply = 0; ply < killers.length; ply++) {
+            killers[ply][0] = -1;
+            killers[ply][1] = -1;
+        }
+        for(int side = 0; side < 2; side++) {
+            for(int spot = 0; spot < history[side].length; spot++)
+                history[side][spot] = 0;
+        }
+    }
+
+    /* Finds the bit index of the spot a token dropped in a column would land on. */
+    private static int spot(Connect4Bitboard board, int col) {
+        long move = (board.getMask() + Connect4Bitboard.bottomMask(col)) & Connect4Bitboard.columnMask(col);
+        return Long.numberOfTrailingZeros(move);
+    }
+}
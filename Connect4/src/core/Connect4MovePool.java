@@ -0,0 +1,422 @@
+/**
+ * This is a shared pool of threads that works out the computer's moves for every computer session of the server,
+ * so however many sessions are open, no more moves are searched at once than there are threads (one per core by
+ * default). A session hands its move over and waits for the result instead of searching on its own thread.
+ *
+ * Moves wait in a bounded queue ordered by deadline: the time the move was asked for plus the time budget of the
+ * player. Quick moves from low levels go ahead of slow ones, but a slow move is never passed over forever, and
+ * moves with the same deadline are taken in the order they came in. When the queue is full, the move is worked out
+ * right away on the session's thread by the rule-based Connect4ComputerPlayer instead, which takes almost no time.
+ *
+ * While a session waits for the human's move, its search player can ponder on the pool: search the position the
+ * human is looking at, so the answer to their move is mostly worked out by the time it comes. Pondering only
+ * starts when a thread is free, always waits behind real moves, and is stopped as soon as a real move needs the
+ * thread, so it only ever uses CPU that would sit idle.
+ *
+ * A move being worked out can borrow the threads the pool is not using for helpers, such as the helper searches of
+ * a parallel Connect4SearchPlayer. A helper holds its thread like a move does, so helpers never push the pool past
+ * its number of threads, and none are started while moves are waiting.
+ *
+ * A server that must not block, such as Connect4NioServer, asks for moves with determineMoveAsync and is handed the
+ * column through a future instead of waiting for it.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+public class Connect4MovePool implements Connect4Constants {
+    // how many moves may wait for a thread before new ones are played by the fallback player
+    public static final int DEFAULTQUEUESIZE = 256;
+
+    private ThreadPoolExecutor executor;
+    private int threads;
+    private int queueSize;
+    private AtomicInteger queued;
+    private AtomicInteger running;
+    private AtomicLong sequence;
+    private AtomicLong fallbacks;
+    private Connect4Strategy fallback;
+    private ConcurrentHashMap<Connect4Strategy, MoveTask> ponders;
+
+    /**
+     * Creates a pool with one thread per core and the default queue size.
+     */
+    public Connect4MovePool() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULTQUEUESIZE);
+    }
+
+    /**
+     * Creates a pool with a fixed number of threads.
+     *
+     * @param threads the number of moves that may be searched at once, at least 1
+     * @param queueSize the number of moves that may wait for a thread, at least 1
+     */
+    public Connect4MovePool(int threads, int queueSize) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), runnable -> {
+                    Thread thread = new Thread(runnable, "Connect4 move pool " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.queueSize = Math.max(1, queueSize);
+        queued = new AtomicInteger();
+        running = new AtomicInteger();
+        sequence = new AtomicLong();
+        fallbacks = new AtomicLong();
+        fallback = new Connect4ComputerPlayer();
+        ponders = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Works out a move on one of the pool's threads and waits for it. If the queue is full, or the move cannot be
+     * worked out on the pool, the fallback player picks the move on the calling thread instead. The game must not
+     * be changed until this returns.
+     *
+     * @param player the computer player whose move it is; only one of its moves may be asked for at a time
+     * @param gameLogic the game, with the computer's turn next
+     * @param timeBudget the most milliseconds the player takes for a move, which sets its place in the queue
+     * @return the column the player picked
+     */
+    public int determineMove(Connect4Strategy player, Connect4 gameLogic, long timeBudget) {
+        MoveTask task = submit(player, gameLogic, timeBudget, null);
+        if(task == null)
+            return fallbackMove(gameLogic);
+
+        try {
+            return task.get();
+        } catch(InterruptedException ex) {
+            task.cancel(true);
+            Thread.currentThread().interrupt();
+            return fallbackMove(gameLogic);
+        } catch(ExecutionException ex) {
+            System.err.println(ex);
+            return fallbackMove(gameLogic);
+        }
+    }
+
+    /**
+     * Works out a move on one of the pool's threads without waiting for it, for callers such as an event loop that
+     * must not block. The future is completed on the pool's thread, or right away with the fallback player's move
+     * if the queue is full. The game must not be changed until the future is completed.
+     *
+     * @param player the computer player whose move it is; only one of its moves may be asked for at a time
+     * @param gameLogic the game, with the computer's turn next
+     * @param timeBudget the most milliseconds the player takes for a move, which sets its place in the queue
+     * @return a future that is completed with the column the player picked
+     */
+    public CompletableFuture<Integer> determineMoveAsync(Connect4Strategy player, Connect4 gameLogic,
+                                                         long timeBudget) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        if(submit(player, gameLogic, timeBudget, result) == null)
+            result.complete(fallbackMove(gameLogic));
+        return result;
+    }
+
+    /**
+     * Starts pondering for a player while the other player thinks about their move, if the pool has a free thread.
+     * Any pondering the player was already doing is told to stop first, and if it has not finished yet, no new
+     * pondering is started, so this never waits. Only search players ponder.
+     *
+     * @param player the computer player to ponder for
+     * @param board the position after the player's move, with the other player's turn next; it must not be changed
+     * @return true if pondering was started, or false if the pool is too busy or the player cannot ponder
+     */
+    public boolean startPondering(Connect4Strategy player, Connect4Bitboard board) {
+        if(!stopPonderingAsync(player).isDone())
+            return false;
+        if(!(player instanceof Connect4SearchPlayer) || queued.get() > 0 || running.get() >= threads)
+            return false;
+
+        Connect4SearchPlayer searchPlayer = (Connect4SearchPlayer) player;
+        MoveTask task = new MoveTask(searchPlayer, searchPlayer.createPonderSearch(board), sequence.getAndIncrement());
+        ponders.put(player, task);
+        try {
+            executor.execute(task);
+        } catch(RejectedExecutionException ex) {
+            ponders.remove(player);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops a player's pondering and waits for it to finish, so the player can be asked for its move. It does
+     * nothing if the player is not pondering.
+     *
+     * @param player the computer player to stop pondering for
+     */
+    public void stopPondering(Connect4Strategy player) {
+        try {
+            stopPonderingAsync(player).get();
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    /**
+     * Tells a player's pondering to stop without waiting for it, for callers such as an event loop that must not
+     * block. The player must not be asked for its move until the future is completed.
+     *
+     * @param player the computer player to stop pondering for
+     * @return a future that is completed once the pondering has finished, right away if the player is not pondering
+     */
+    public CompletableFuture<Void> stopPonderingAsync(Connect4Strategy player) {
+        MoveTask task = ponders.remove(player);
+        if(task == null)
+            return CompletableFuture.completedFuture(null);
+
+        task.search.stop();
+        // a ponder still in the queue is just taken out; one that is running stops within a few thousand nodes
+        if(executor.remove(task))
+            return CompletableFuture.completedFuture(null);
+        return task.finished;
+    }
+
+    /**
+     * Runs helpers for a move on threads the pool is not using. Only as many helpers run as there are free
+     * threads, and none if moves are waiting, so it may be fewer than wanted. Helpers go ahead of moves and ponders
+     * in the queue, since their threads are already counted as taken. The count of free threads can be behind a
+     * worker that has just taken a ponder, so a helper may still wait; cancelling its future drops it if it has not
+     * started, and does nothing once it has.
+     *
+     * @param wanted the most helpers to run
+     * @param helpers makes the helper with each index, on the calling thread, from 0 up to the number that run
+     * @return the futures of the helpers that run, one for each index
+     */
+    public Future<?>[] runHelpers(int wanted, IntFunction<Runnable> helpers) {
+        int count = 0;
+        while(count < wanted && queued.get() == 0) {
+            int busy = running.get();
+            if(busy >= threads)
+                break;
+            if(running.compareAndSet(busy, busy + 1))
+                count++;
+        }
+
+        Future<?>[] futures = new Future<?>[count];
+        for(int i = 0; i < count; i++) {
+            MoveTask task = new MoveTask(helpers.apply(i), sequence.getAndIncrement());
+            futures[i] = task;
+            try {
+                executor.execute(task);
+            } catch(RejectedExecutionException ex) {
+                // the pool has been shut down, so the helper gives its thread back and is never run
+                running.decrementAndGet();
+                futures[i] = CompletableFuture.completedFuture(null);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Stops the threads once the moves already asked for are done.
+     */
+    public void shutdown() { executor.shutdown(); }
+
+    /**
+     * Gets the number of moves waiting for a thread.
+     *
+     * @return the length of the queue
+     */
+    public int getQueued() { return queued.get(); }
+
+    /**
+     * Gets the number of moves the fallback player had to pick because the queue was full or a search failed.
+     *
+     * @return the number of fallback moves since the pool was made
+     */
+    public long getFallbacks() { return fallbacks.get(); }
+
+    /* Puts a move in the queue, or returns null if the fallback player has to pick it. */
+    private MoveTask submit(Connect4Strategy player, Connect4 gameLogic, long timeBudget,
+                            CompletableFuture<Integer> result) {
+        if(queued.incrementAndGet() > queueSize) {
+            queued.decrementAndGet();
+            return null;
+        }
+
+        MoveTask task = new MoveTask(player, gameLogic, System.nanoTime() + timeBudget * 1000000L,
+                sequence.getAndIncrement(), result);
+        // back off: every thread is busy, so pondering gives its threads up to real moves
+        if(running.get() >= threads) {
+            for(MoveTask ponder : ponders.values())
+                ponder.search.stop();
+        }
+        try {
+            executor.execute(task);
+        } catch(RejectedExecutionException ex) {
+            // the pool has been shut down
+            queued.decrementAndGet();
+            return null;
+        }
+        return task;
+    }
+
+    /* Picks a move with the rule-based player on the calling thread. */
+    private int fallbackMove(Connect4 gameLogic) {
+        fallbacks.incrementAndGet();
+        return fallback.determineMove(gameLogic.getLastSpot(), gameLogic.getSpots(), gameLogic);
+    }
+
+    /* A helper, a move or a ponder waiting in the queue. Helpers go first, then moves, then ponders, then by
+       deadline, and then by the order they came in. */
+    private class MoveTask extends FutureTask<Integer> implements Comparable<MoveTask> {
+        private Connect4Search search; // only set for a ponder
+        private Connect4 gameLogic; // only set for a move
+        private CompletableFuture<Integer> result; // only set for a move asked for without waiting
+        private CompletableFuture<Void> finished; // only set for a ponder, and completed when it is done
+        private boolean helper; // whose thread was taken when it was made
+        private long deadline;
+        private long order;
+        private boolean released; // whether the thread running the task has been counted as free again
+
+        private MoveTask(Connect4Strategy player, Connect4 gameLogic, long deadline, long order,
+                         CompletableFuture<Integer> result) {
+            super(() -> player.determineMove(gameLogic.getLastSpot(), gameLogic.getSpots(), gameLogic));
+            this.search = null;
+            this.gameLogic = gameLogic;
+            this.result = result;
+            finished = null;
+            helper = false;
+            this.deadline = deadline;
+            this.order = order;
+            released = false;
+        }
+
+        private MoveTask(Runnable helperTask, long order) {
+            super(helperTask, -1);
+            this.search = null;
+            this.gameLogic = null;
+            this.result = null;
+            finished = null;
+            helper = true;
+            this.deadline = 0;
+            this.order = order;
+            released = false;
+        }
+
+        private MoveTask(Connect4SearchPlayer player, Connect4Search search, long order) {
+            super(() -> {
+                player.ponder(search);
+                return -1;
+            });
+            this.search = search;
+            this.gameLogic = null;
+            this.result = null;
+            finished = new CompletableFuture<>();
+            helper = false;
+            this.deadline = 0;
+            this.order = order;
+            released = false;
+        }
+
+        @Override
+        public void run() {
+            // ponders and helpers never count towards the queue size
+            if(search == null && !helper)
+                queued.decrementAndGet();
+            // a move cancelled while it waited is not run, so it must not take a thread
+            if(isCancelled()) {
+                if(helper)
+                    release();
+                return;
+            }
+            if(!helper)
+                running.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                // a task cancelled after it was taken never reaches set or setException
+                release();
+            }
+        }
+
+        /* The thread is counted as free before the result is handed back, so a session that gets its move can
+           start pondering right away. */
+        @Override
+        protected void set(Integer result) {
+            release();
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable ex) {
+            release();
+            super.setException(ex);
+        }
+
+        /* A helper is only cancelled while it is still in the queue, and then gives back the thread it was counted
+           for. One that has started cannot be cancelled, so whoever joins it always waits for its search to end. */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if(helper && !executor.remove(this))
+                return false;
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if(cancelled && helper)
+                release();
+            return cancelled;
+        }
+
+        /* Counts the thread running the task as free, once. Only the thread running the task calls it, or for a
+           helper taken out of the queue, the thread that cancelled it. */
+        private void release() {
+            if(released)
+                return;
+            released = true;
+            running.decrementAndGet();
+        }
+
+        /* Hands the move to a caller that did not wait for it, falling back if the search failed, or tells whoever
+           stopped a ponder that it is done. */
+        @Override
+        protected void done() {
+            if(finished != null)
+                finished.complete(null);
+            if(result == null)
+                return;
+            try {
+                result.complete(get());
+            } catch(InterruptedException | ExecutionException | CancellationException ex) {
+                System.err.println(ex);
+                result.complete(fallbackMove(gameLogic));
+            }
+        }
+
+        @Override
+        public int compareTo(MoveTask other) {
+            if(rank() != other.rank())
+                return rank() < other.rank() ? -1 : 1;
+            long difference = deadline - other.deadline;
+            if(difference != 0)
+                return difference < 0 ? -1 : 1;
+            return Long.compare(order, other.order);
+        }
+
+        /* Where the kind of task goes in the queue: helpers, then moves, then ponders. */
+        private int rank() {
+            if(helper)
+                return 0;
+            return search == null ? 1 : 2;
+        }
+    }
+}
@@ -0,0 +1,689 @@
+/**
+ * This is a Connect4 server that runs every game on a handful of event-loop threads instead of one thread per
+ * session, so tens of thousands of mostly idle games can be open at once. It speaks the same framed protocol as
+ * Connect4BlockingServer (see Connect4Message), so the same Connect4Client plays on either. It has no window and is
+ * started from the command line:
+ *
+ *     java core.Connect4NioServer [port] [event loops] [--nocomputer] [--maxlevel=N]
+ *
+ * Each event loop has its own Selector and owns the connections handed to it; the first loop also accepts new
+ * connections and hands them out in turn. Nothing on an event loop blocks. A connection is a small state machine
+ * that reads the messages of the protocol as they come in and only takes the next one when its state expects it, so
+ * a player that sends a move too early just has it wait. Messages sent to a connection are only written once the
+ * loop has done everything it can in one pass, so a turn goes out in one write. The computer's moves are searched
+ * on the shared move pool of Connect4ComputerService, and the result is posted back to the session's event loop.
+ * Players who want a human opponent are paired in a Connect4Lobby, and the timeout for waiting there is a timer on
+ * the player's own event loop rather than a blocked thread.
+ *
+ * The state of a connection is only touched on its own event loop, and the state of a game only on the event loop
+ * of the player who started it. Everything else is posted to the right loop as a task, so there are no locks.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Connect4NioServer implements Connect4Constants {
+    public static final int DEFAULTPORT = 8000;
+    // the most bytes that may wait to be read or written on one connection before it is dropped
+    private static final int BUFFERSIZE = 256;
+
+    // the states of a connection: what it expects to read next
+    private static final int NEW = 0;         // the kind of opponent
+    private static final int TURN = 1;        // a move
+    private static final int WAITING = 2;     // nothing, since it is not the player's turn
+    private static final int CLOSED = 3;
+
+    private int port;
+    private EventLoop[] loops;
+    private Connect4ComputerService computerService;
+    private ServerSocketChannel serverChannel;
+    private Connect4Lobby<Connection> lobby;
+    private boolean computerFallback;
+    private AtomicInteger nextLoop;
+    private AtomicInteger numSession;
+    private Connect4Log log;
+    private volatile boolean running;
+
+    /**
+     * Creates a server. It does not listen until start is called.
+     *
+     * @param port the port to listen on
+     * @param loopCount the number of event-loop threads, at least 1
+     * @param computerFallback true to give a player nobody joins in time a computer opponent
+     * @param computerService the computer players shared by the computer sessions
+     * @param log the log that connections and sessions are written to
+     */
+    public Connect4NioServer(int port, int loopCount, boolean computerFallback, Connect4ComputerService computerService,
+                             Connect4Log log) {
+        this.port = port;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+        this.computerService = computerService;
+        lobby = new Connect4Lobby<>();
+        this.computerFallback = computerFallback;
+        nextLoop = new AtomicInteger();
+        numSession = new AtomicInteger(1);
+        this.log = log;
+        running = false;
+    }
+
+    /**
+     * Opens the port and starts the event loops.
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        for(int i = 0; i < loops.length; i++)
+            loops[i] = new EventLoop(i);
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        for(EventLoop loop : loops)
+            loop.thread.start();
+        log.log("server.started", "port", port, "eventLoops", loops.length, "maxLevel", computerService.getMaxLevel());
+    }
+
+    /**
+     * Stops the event loops and closes every connection.
+     */
+    public void stop() {
+        running = false;
+        for(EventLoop loop : loops) {
+            if(loop != null)
+                loop.selector.wakeup();
+        }
+    }
+
+    /**
+     * Starts a server from the command line and keeps running until the process is stopped.
+     *
+     * @param args the port, which is DEFAULTPORT if it is left out, and then the number of event loops, which is
+     *             the number of cores if it is left out, then the options --nocomputer to close the connection
+     *             of a player nobody joins in time and --maxlevel=N to cap the difficulty level of computer opponents
+     */
+    public static void main(String[] args) {
+        List<String> options = Arrays.asList(args);
+        List<String> values = new ArrayList<>();
+        for(String arg : args) {
+            if(!arg.startsWith("--"))
+                values.add(arg);
+        }
+        int port = values.size() > 0 ? Integer.parseInt(values.get(0)) : DEFAULTPORT;
+        int loopCount = values.size() > 1 ? Integer.parseInt(values.get(1))
+                : Runtime.getRuntime().availableProcessors();
+
+        boolean computerFallback = !options.contains("--nocomputer");
+
+        Connect4ComputerService computerService = new Connect4ComputerService(
+                Connect4ComputerService.parseMaxLevel(options));
+        computerService.open();
+        try {
+            new Connect4NioServer(port, loopCount, computerFallback, computerService, Connect4Log.toStandardOut())
+                    .start();
+        } catch(IOException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    /* Accepts every connection waiting on the server channel and hands each to the next event loop. */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            SocketChannel accepted = channel;
+            loop.execute(() -> loop.register(accepted));
+        }
+    }
+
+    /* One event-loop thread with its own selector, the tasks posted to it by other threads, the timers it has set
+       itself, and the connections that have messages to write at the end of the pass. */
+    private class EventLoop implements Runnable {
+        private Selector selector;
+        private ConcurrentLinkedQueue<Runnable> tasks;
+        private PriorityQueue<Timer> timers;
+        private ArrayList<Connection> unsent;
+        private Thread thread;
+
+        private EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            tasks = new ConcurrentLinkedQueue<>();
+            timers = new PriorityQueue<>();
+            unsent = new ArrayList<>();
+            thread = new Thread(this, "Connect4 event loop " + (index + 1));
+        }
+
+        /* Runs a task on this loop, right away if it is called from this loop. */
+        private void execute(Runnable task) {
+            if(Thread.currentThread() == thread)
+                task.run();
+            else {
+                tasks.add(task);
+                selector.wakeup();
+            }
+        }
+
+        /* Runs a task on this loop after a delay. It is only called on this loop, so the timers need no lock. */
+        private void schedule(long delay, Runnable task) {
+            timers.add(new Timer(System.currentTimeMillis() + delay, task));
+        }
+
+        /* Runs the timers that are due and gets how long the selector may wait for the next one, or 0 for as long
+           as it likes. */
+        private long runTimers() {
+            long now = System.currentTimeMillis();
+            while(!timers.isEmpty() && timers.peek().deadline <= now)
+                timers.poll().task.run();
+            return timers.isEmpty() ? 0 : Math.max(1, timers.peek().deadline - now);
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                Connection connection = new Connection(this, channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                log.log("player.joined", "address", ((InetSocketAddress) channel.getRemoteAddress()).getAddress());
+            } catch(IOException ex) {
+                System.err.println(ex);
+                try {
+                    channel.close();
+                } catch(IOException ex2) {
+                    System.err.println(ex2);
+                }
+            }
+        }
+
+        /* Writes every connection that was sent messages in this pass, so each gets one write per turn. */
+        private void flushUnsent() {
+            for(Connection connection : unsent) {
+                connection.unsent = false;
+                if(connection.state == CLOSED)
+                    continue;
+                try {
+                    connection.flush();
+                } catch(IOException ex) {
+                    System.err.println(ex);
+                    connection.close();
+                }
+            }
+            unsent.clear();
+        }
+
+        public void run() {
+            while(running) {
+                try {
+                    selector.select(runTimers());
+                } catch(IOException ex) {
+                    System.err.println(ex);
+                    break;
+                }
+
+                Runnable task;
+                while((task = tasks.poll()) != null)
+                    task.run();
+                runTimers();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if(!key.isValid())
+                            continue;
+                        if(key.isAcceptable())
+                            accept();
+                        else {
+                            if(key.isReadable())
+                                connection.onReadable();
+                            if(key.isValid() && key.isWritable())
+                                connection.flush();
+                        }
+                    } catch(IOException ex) {
+                        System.err.println(ex);
+                        if(connection != null)
+                            connection.close();
+                    }
+                }
+
+                flushUnsent();
+            }
+
+            for(SelectionKey key : selector.keys()) {
+                if(key.attachment() != null)
+                    ((Connection) key.attachment()).close();
+            }
+            try {
+                if(this == loops[0])
+                    serverChannel.close();
+                selector.close();
+            } catch(IOException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+
+    /* A task an event loop runs once its deadline has passed. */
+    private static class Timer implements Comparable<Timer> {
+        private long deadline;
+        private Runnable task;
+
+        private Timer(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        public int compareTo(Timer other) {
+            return Long.compare(deadline, other.deadline);
+        }
+    }
+
+    /* One client, with the bytes read from it that have not been taken yet and the frames waiting to be sent. */
+    private class Connection {
+        private EventLoop loop;
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer in;
+        private ByteBuffer out;
+        private int state;
+        private boolean processing;
+        private boolean unsent;
+        private boolean closeWhenSent;
+        private CompletableFuture<Connection> lobbyTicket; // only set while waiting in the lobby as player X
+        private Game game;
+
+        private Connection(EventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            in = ByteBuffer.allocate(BUFFERSIZE);
+            out = ByteBuffer.allocate(BUFFERSIZE);
+            state = NEW;
+            processing = false;
+            unsent = false;
+            closeWhenSent = false;
+            lobbyTicket = null;
+            game = null;
+        }
+
+        private void onReadable() throws IOException {
+            if(channel.read(in) < 0) {
+                close();
+                return;
+            }
+            process();
+            // a client that keeps sending without waiting for its turn is dropped
+            if(state != CLOSED && !in.hasRemaining())
+                close();
+        }
+
+        /* Takes the messages the current state expects from what has been read so far. A game on the same loop may
+           answer a move before receive returns, so this is never run twice at once. */
+        private void process() {
+            if(processing)
+                return;
+            processing = true;
+            in.flip();
+            try {
+                Connect4Message message;
+                while((state == NEW || state == TURN) && (message = Connect4Message.read(in)) != null)
+                    receive(message);
+            } catch(IOException ex) {
+                System.err.println(ex);
+                close();
+            }
+            in.compact();
+            processing = false;
+        }
+
+        private void receive(Connect4Message message) {
+            if(state == NEW) {
+                if(message.getType() == COMPUTEROPPONENT) {
+                    int level = message.getValueCount() > 0 ? message.getValue(0) : Connect4Difficulty.DEFAULTLEVEL;
+                    ComputerGame computerGame = new ComputerGame(this, computerService.clampLevel(level));
+                    game = computerGame;
+                    log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "computer");
+                    // the client moves first against the computer and does not wait to be told
+                    state = TURN;
+                }
+                else if(message.getType() == PLAYEROPPONENT)
+                    joinPlayer();
+                else
+                    close();
+            }
+            else if(message.getType() == MOVE && message.getValueCount() == 1) {
+                // the move goes to the game's loop, and nothing more is read until the game says so
+                state = WAITING;
+                int col = message.getValue(0);
+                Game current = game;
+                current.loop.execute(() -> current.onMove(this, col));
+            }
+            else
+                close();
+        }
+
+        /* Waits in the lobby for another player, or is handed to the player already waiting, whose loop then
+           starts the game. */
+        private void joinPlayer() {
+            state = WAITING;
+            CompletableFuture<Connection> ticket = lobby.join(this);
+            if(ticket == null)
+                return;
+            send(PLAYERX);
+            lobbyTicket = ticket;
+            ticket.thenAccept(playerO -> post(() -> startGame(playerO)));
+            loop.schedule(lobby.getTimeout(), () -> onLobbyTimeout(ticket));
+        }
+
+        /* Starts a game as player X with the player who joined, once that player has been told it is player O. */
+        private void startGame(Connection playerO) {
+            lobbyTicket = null;
+            if(state == CLOSED) {
+                playerO.post(() -> playerO.close());
+                return;
+            }
+            PlayerGame playerGame = new PlayerGame(this, playerO);
+            game = playerGame;
+            log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "player");
+            playerO.post(() -> {
+                if(playerO.state == CLOSED) {
+                    post(() -> playerGame.onClose(playerO));
+                    return;
+                }
+                playerO.game = playerGame;
+                playerO.send(PLAYERO);
+                post(() -> playerGame.begin());
+            });
+        }
+
+        /* Gives up waiting in the lobby, unless the player was matched in the meantime, and then plays the computer
+           or closes the connection. */
+        private void onLobbyTimeout(CompletableFuture<Connection> ticket) {
+            if(lobbyTicket != ticket || state == CLOSED || lobby.giveUp(ticket) != null)
+                return;
+            lobbyTicket = null;
+            if(computerFallback) {
+                // the computer plays O with the same messages a human opponent would send
+                send(PLAYERXTURN);
+                game = new ComputerGame(this, computerService.clampLevel(Connect4Difficulty.DEFAULTLEVEL));
+                log.log("session.started", "number", numSession.getAndIncrement(), "opponent", "computer",
+                        "reason", "no opponent joined");
+                expectMove();
+            }
+            else
+                close();
+        }
+
+        /* Lets the connection take a move again, including one that has already been read. */
+        private void expectMove() {
+            if(state == CLOSED)
+                return;
+            state = TURN;
+            process();
+        }
+
+        /* Adds a message to be written at the end of the loop's pass, dropping the client if it has stopped
+           reading. It is only called on the connection's own loop. Every message the server sends has at most
+           two values, so these overloads never allocate an array. */
+        private void send(int type) {
+            if(reserve(0))
+                Connect4Message.write(out, type);
+        }
+
+        private void send(int type, int value1, int value2) {
+            if(reserve(2))
+                Connect4Message.write(out, type, value1, value2);
+        }
+
+        /* Makes sure a frame fits in the output buffer and that the buffer is written at the end of the pass. */
+        private boolean reserve(int valueCount) {
+            if(state == CLOSED)
+                return false;
+            if(out.remaining() < Connect4Message.frameSize(valueCount)) {
+                close();
+                return false;
+            }
+            if(!unsent) {
+                unsent = true;
+                loop.unsent.add(this);
+            }
+            return true;
+        }
+
+        /* Writes what it can and only asks the selector about writing while something is left over. */
+        private void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if(out.position() > 0)
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            else if(closeWhenSent)
+                close();
+            else
+                key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /* Closes the connection once everything sent to it has been written. */
+        private void finish() {
+            if(state == CLOSED)
+                return;
+            state = WAITING;
+            closeWhenSent = true;
+            if(out.position() == 0)
+                close();
+        }
+
+        private void close() {
+            if(state == CLOSED)
+                return;
+            state = CLOSED;
+            // a player matched just as this one leaves the lobby is closed by startGame
+            if(lobbyTicket != null)
+                lobby.giveUp(lobbyTicket);
+            if(key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch(IOException ex) {
+                System.err.println(ex);
+            }
+            Game current = game;
+            if(current != null)
+                current.loop.execute(() -> current.onClose(this));
+        }
+
+        /* Runs a task on this connection's loop. */
+        private void post(Runnable task) { loop.execute(task); }
+    }
+
+    /* A game in progress, whose state is only touched on its event loop. */
+    private abstract class Game {
+        protected EventLoop loop;
+        protected Connect4 gameLogic;
+        protected boolean over;
+
+        protected Game(EventLoop loop) {
+            this.loop = loop;
+            gameLogic = new Connect4();
+            over = false;
+        }
+
+        /* A player sent a move while it was their turn. */
+        protected abstract void onMove(Connection player, int col);
+
+        /* A player's connection was closed. */
+        protected abstract void onClose(Connection player);
+
+        /* Makes a player's move, sending INVALID and waiting for another if it cannot be made. The caller sends
+           VALID along with whatever else the player is told about the turn. */
+        protected int makeMove(Connection player, int col) {
+            int move = gameLogic.makeMovePacked(col);
+            if(move < 0) {
+                player.post(() -> {
+                    player.send(INVALID);
+                    player.expectMove();
+                });
+            }
+            return move;
+        }
+    }
+
+    /* A game between two clients. It runs on player X's loop. */
+    private class PlayerGame extends Game {
+        private Connection playerX;
+        private Connection playerO;
+
+        private PlayerGame(Connection playerX, Connection playerO) {
+            super(playerX.loop);
+            this.playerX = playerX;
+            this.playerO = playerO;
+        }
+
+        /* Tells player X the game has started, unless either player has gone in the meantime. */
+        private void begin() {
+            if(over)
+                return;
+            playerX.send(PLAYERXTURN);
+            playerX.expectMove();
+        }
+
+        protected void onMove(Connection player, int col) {
+            if(over)
+                return;
+            int move = makeMove(player, col);
+            if(move < 0)
+                return;
+
+            Connection other = player == playerX ? playerO : playerX;
+            int row = Connect4.packedRow(move);
+            int column = Connect4.packedCol(move);
+            gameLogic.checkBoard();
+            int anyWin = gameLogic.getOutcome();
+            if(anyWin == NOWIN) {
+                gameLogic.changePlayerTurn();
+                player.post(() -> player.send(VALID, row, column));
+                other.post(() -> {
+                    other.send(NOWIN, row, column);
+                    other.expectMove();
+                });
+            }
+            else {
+                over = true;
+                player.post(() -> {
+                    player.send(VALID, row, column);
+                    player.send(anyWin);
+                    player.finish();
+                });
+                other.post(() -> {
+                    other.send(anyWin, row, column);
+                    other.finish();
+                });
+            }
+        }
+
+        protected void onClose(Connection player) {
+            // once the game is over, each player is closed on its own after its last message
+            if(over)
+                return;
+            over = true;
+            Connection other = player == playerX ? playerO : playerX;
+            other.post(() -> other.close());
+        }
+    }
+
+    /* A game between a client and a computer player, on the client's loop. */
+    private class ComputerGame extends Game {
+        private Connection player;
+        private Connect4Strategy computerPlayer;
+        private Connect4MovePool movePool;
+        private long timeBudget;
+        private boolean ponders;
+
+        private ComputerGame(Connection player, int level) {
+            super(player.loop);
+            this.player = player;
+            computerPlayer = computerService.createPlayer(level);
+            movePool = computerService.getMovePool();
+            timeBudget = Connect4Difficulty.getTimeBudget(level);
+            ponders = computerService.ponders(level);
+        }
+
+        protected void onMove(Connection player, int col) {
+            if(over)
+                return;
+            // the ponder searches a board of its own, so the move can be made while it is still stopping
+            int move = makeMove(player, col);
+            if(move < 0)
+                return;
+
+            // the valid move goes out at the end of this pass, before the computer has picked its reply
+            player.send(VALID, Connect4.packedRow(move), Connect4.packedCol(move));
+            gameLogic.checkBoard();
+            int anyWin = gameLogic.getOutcome();
+            if(anyWin != NOWIN) {
+                over = true;
+                movePool.stopPonderingAsync(computerPlayer);
+                player.send(anyWin);
+                player.finish();
+                return;
+            }
+            gameLogic.changePlayerTurn();
+            // the computer is only asked for its move once its ponder has finished, which takes at most a few
+            // thousand nodes of search, and the loop goes on with other connections meanwhile
+            movePool.stopPonderingAsync(computerPlayer).thenRun(() -> loop.execute(() -> askComputer()));
+        }
+
+        /* Hands the computer's move to the move pool once nothing else is searching for the computer player. */
+        private void askComputer() {
+            if(over)
+                return;
+            movePool.determineMoveAsync(computerPlayer, gameLogic, timeBudget)
+                    .thenAccept(computerCol -> loop.execute(() -> onComputerMove(computerCol)));
+        }
+
+        /* Makes the computer's move once the move pool has picked it. */
+        private void onComputerMove(int col) {
+            if(over)
+                return;
+            int move = gameLogic.makeMovePacked(col);
+            gameLogic.checkBoard();
+            int anyWin = gameLogic.getOutcome();
+            player.send(anyWin, Connect4.packedRow(move), Connect4.packedCol(move));
+            if(anyWin != NOWIN) {
+                over = true;
+                player.finish();
+                return;
+            }
+            gameLogic.changePlayerTurn();
+            player.expectMove();
+            if(ponders)
+                movePool.startPondering(computerPlayer, gameLogic.getBitboard());
+        }
+
+        protected void onClose(Connection player) {
+            over = true;
+            // the ponder is only told to stop, since nothing waits for it any more
+            movePool.stopPonderingAsync(computerPlayer);
+        }
+    }
+}
@@ -276,20 +276,38 @@ public class Connect4Old {
      * @return a String bearing the appropriate message depending on the outcome (tie, playerX wins, playerO wins, no-win)
      */
     public String checkForWinner() {
+        int outcome = getOutcome();
+        if(outcome == Connect4Constants.TIE)
+            return "TIE";
+        else if(outcome == Connect4Constants.PLAYERXWON)
+            return "PLAYERX";
+        else if(outcome == Connect4Constants.PLAYEROWON)
+            return "PLAYERO";
+        else
+            return "NO_WIN";
+    }
+
+    /**
+     * Does the same as checkForWinner, including ending the game if there is a winner or a tie, but returns
+     * the outcome as one of the codes from Connect4Constants so it can be compared without a String.
+     *
+     * @return Connect4Constants.TIE, PLAYERXWON, PLAYEROWON or NOWIN depending on the outcome
+     */
+    public int getOutcome() {
         if(isTie) {
             gameOver.set(true);
-            return "TIE";
+            return Connect4Constants.TIE;
         }
         else if(playerXWin) {
             gameOver.set(true);
-            return "PLAYERX";
+            return Connect4Constants.PLAYERXWON;
         }
         else if(playerOWin) {
             gameOver.set(true);
-            return "PLAYERO";
+            return Connect4Constants.PLAYEROWON;
         }
         else {
-            return "NO_WIN";
+            return Connect4Constants.NOWIN;
         }
     }
 
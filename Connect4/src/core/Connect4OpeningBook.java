@@ -0,0 +1,211 @@
+/**
+ * This is an opening book for the computer player: a table of the best move for every position in the first plies
+ * of the game, worked out ahead of time with Connect4Search. It is kept in a compact binary file which is memory
+ * mapped instead of read in, so opening it parses nothing and the entries stay out of the heap. A position and its
+ * mirror image share one entry.
+ *
+ * The file starts with a header of four ints (the magic number, the version, the number of plies covered and the
+ * number of entries), followed by the entries sorted by key. Each entry is one long holding the position key
+ * (see Connect4Bitboard.getKey) shifted left four bits, with the best column in the low four bits.
+ *
+ * A book can be made with the main method: java core.Connect4OpeningBook file plies depth
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Connect4OpeningBook implements Connect4Constants {
+    // "C4OB"
+    private static final int MAGIC = 0x43344F42;
+    private static final int VERSION = 1;
+    private static final int HEADERSIZE = 16;
+    private static final int ENTRYSIZE = 8;
+
+    private MappedByteBuffer buffer;
+    private int plies;
+    private int size;
+
+    /* Books are made with open. */
+    private Connect4OpeningBook(MappedByteBuffer buffer, int plies, int size) {
+        this.buffer = buffer;
+        this.plies = plies;
+        this.size = size;
+    }
+
+    /**
+     * Maps a book file into memory. The file is closed right away; the mapping stays valid until the book is
+     * garbage collected.
+     *
+     * @param file the book file
+     * @return the opening book in the file
+     * @throws IOException an exception that is thrown if the file cannot be read or is not an opening book
+     */
+    public static Connect4OpeningBook open(Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(channel.size() < HEADERSIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException(file + " is not a Connect4 opening book");
+
+            int plies = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            if(channel.size() < HEADERSIZE + (long) size * ENTRYSIZE)
+                throw new IOException(file + " is cut short");
+            return new Connect4OpeningBook(buffer, plies, size);
+        }
+    }
+
+    /**
+     * Opens a book file if there is one. If the file is missing or cannot be read, the error is printed
+     * and null is returned, so the computer player just searches every move instead.
+     *
+     * @param file the book file
+     * @return the opening book in the file, or null if it could not be opened
+     */
+    public static Connect4OpeningBook openIfExists(Path file) {
+        if(!Files.exists(file))
+            return null;
+        try {
+            return open(file);
+        } catch(IOException ex) {
+            System.err.println(ex);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the best move for a position. The lookup is a binary search of the mapped file, and it is
+     * safe to call from many threads at once.
+     *
+     * @param board the position, with the computer's turn next
+     * @return the best column for the player whose turn it is, or -1 if the position is not in the book
+     */
+    public int lookup(Connect4Bitboard board) {
+        if(board.getMoveCount() >= plies)
+            return -1;
+
+        long key = board.getKey();
+        long mirroredKey = board.getMirroredKey();
+        boolean mirrored = mirroredKey < key;
+        long target = mirrored ? mirroredKey : key;
+
+        int low = 0;
+        int high = size - 1;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            long entry = buffer.getLong(HEADERSIZE + mid * ENTRYSIZE);
+            long entryKey = entry >>> 4;
+            if(entryKey < target)
+                low = mid + 1;
+            else if(entryKey > target)
+                high = mid - 1;
+            else {
+                int col = (int) (entry & 0xF);
+                return mirrored ? COLUMNS - 1 - col : col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the number of plies the book covers. Positions with this many tokens or more are not in it.
+     *
+     * @return the number of plies covered
+     */
+    public int getPlies() { return plies; }
+
+    /**
+     * Gets the number of positions in the book.
+     *
+     * @return the number of entries
+     */
+    public int getSize() { return size; }
+
+    /**
+     * Makes a book file by searching every position that can come up in the first plies of a game (except ones
+     * where the game is already over). Mirror images are only searched once.
+     *
+     * @param file the file to write the book to
+     * @param plies positions with fewer tokens than this are put in the book
+     * @param depth how deep to search each position
+     * @throws IOException an exception that is thrown if the file cannot be written
+     */
+    public static void generate(Path file, int plies, int depth) throws IOException {
+        Map<Long, Integer> entries = new HashMap<>();
+        Connect4Bitboard board = new Connect4Bitboard();
+        Connect4Search search = new Connect4Search(board, 0, new Connect4TranspositionTable(64));
+        addPositions(board, plies, depth, search, entries);
+
+        long[] sorted = new long[entries.size()];
+        int i = 0;
+        for(Map.Entry<Long, Integer> entry : entries.entrySet())
+            sorted[i++] = (entry.getKey() << 4) | entry.getValue();
+        Arrays.sort(sorted);
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(plies);
+            out.writeInt(sorted.length);
+            for(long entry : sorted)
+                out.writeLong(entry);
+        }
+    }
+
+    /* Searches the position on the board and every position after it with fewer tokens than plies. */
+    private static void addPositions(Connect4Bitboard board, int plies, int depth, Connect4Search search,
+                                     Map<Long, Integer> entries) {
+        if(board.getMoveCount() >= plies)
+            return;
+
+        long key = board.getKey();
+        long mirroredKey = board.getMirroredKey();
+        long canonicalKey = Math.min(key, mirroredKey);
+        if(entries.containsKey(canonicalKey))
+            return;
+
+        int col = search.searchIterative(depth, 0);
+        if(col == -1)
+            return;
+        entries.put(canonicalKey, mirroredKey < key ? COLUMNS - 1 - col : col);
+
+        for(int next = 0; next < COLUMNS; next++) {
+            if(!board.canPlay(next) || board.isWinningMove(next))
+                continue;
+            board.play(next);
+            addPositions(board, plies, depth, search, entries);
+            board.undo();
+        }
+    }
+
+    /**
+     * Makes an opening book file from the command line.
+     *
+     * @param args the file to write, the number of plies to cover and the search depth
+     */
+    public static void main(String[] args) {
+        if(args.length != 3) {
+            System.err.println("Usage: java core.Connect4OpeningBook file plies depth");
+            return;
+        }
+        try {
+            generate(Paths.get(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        } catch(IOException ex) {
+            System.err.println(ex);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/**
+ * This is a negamax search with alpha-beta pruning over a Connect4Bitboard. Scores are always from the point of
+ * view of the player whose turn it is: a win scores more than WIN_SCORE (more for a quicker win), a loss scores
+ * less than -WIN_SCORE, a full board scores 0, and a position at the depth limit is given a heuristic score in
+ * between. The search can also be given a node budget, after which it stops and keeps the best move it has found.
+ * With iterative deepening, it searches one move deeper at a time until a time budget runs out, and always has the
+ * best move of the deepest search it finished.
+ * If it is given a transposition table, positions already searched deep enough are looked up instead of searched.
+ * Moves are tried in the order given by a Connect4MoveOrdering, or left to right if it has none.
+ * A Connect4EvalCache shared with other players can be added for results of positions that cost the most to search.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public class Connect4Search implements Connect4Constants {
+    // the lowest score of a win; heuristic scores always stay between -WIN_SCORE and WIN_SCORE
+    public static final int WIN_SCORE = 1000;
+    // higher than any score the search can give
+    static final int MAX_SCORE = WIN_SCORE + ROWS * COLUMNS;
+
+    private Connect4Bitboard board;
+    private Connect4TranspositionTable table;
+    private Connect4EvalCache cache;
+    private Connect4MoveOrdering ordering;
+    private int[][] moveLists;
+    private long nodeBudget;
+    private long nodes;
+    private boolean aborted;
+    private int bestScore;
+    private int depthReached;
+    private boolean hasDeadline;
+    private long deadline;
+    private volatile boolean stopRequested;
+
+    /**
+     * Sets up a search of a position. The board is changed while searching, but is always put back
+     * the way it was before search returns.
+     *
+     * @param board the position to search, with the computer's turn next
+     * @param nodeBudget the most positions the search may visit before it stops, or 0 for no limit
+     */
+    public Connect4Search(Connect4Bitboard board, long nodeBudget) {
+        this(board, nodeBudget, null);
+    }
+
+    /**
+     * Sets up a search of a position that stores and looks up results in a transposition table.
+     * The table may be shared with other searches.
+     *
+     * @param board the position to search, with the computer's turn next
+     * @param nodeBudget the most positions the search may visit before it stops, or 0 for no limit
+     * @param table the transposition table to use, or null to not use one
+     */
+    public Connect4Search(Connect4Bitboard board, long nodeBudget, Connect4TranspositionTable table) {
+        this(board, nodeBudget, table, new Connect4MoveOrdering());
+    }
+
+    /**
+     * Sets up a search of a position with the given move ordering. The ordering may be kept from one search
+     * to the next, but not shared with another search running at the same time.
+     *
+     * @param board the position to search, with the computer's turn next
+     * @param nodeBudget the most positions the search may visit before it stops, or 0 for no limit
+     * @param table the transposition table to use, or null to not use one
+     * @param ordering the move ordering to use, or null to try the columns left to right
+     */
+    public Connect4Search(Connect4Bitboard board, long nodeBudget, Connect4TranspositionTable table,
+                          Connect4MoveOrdering ordering) {
+        this.board = board;
+        this.table = table;
+        this.cache = null;
+        this.ordering = ordering;
+        moveLists = new int[ROWS * COLUMNS + 1][COLUMNS]; // one list of moves for every number of tokens
+        this.nodeBudget = nodeBudget > 0 ? nodeBudget : Long.MAX_VALUE;
+        nodes = 0;
+        aborted = false;
+        bestScore = 0;
+        depthReached = 0;
+        hasDeadline = false;
+        deadline = 0;
+        stopRequested = false;
+    }
+
+    /**
+     * Searches every move of the current player to the given depth and returns the column with the best score.
+     * A winning move is returned right away. If the node budget runs out, the best of the moves that were
+     * completely searched is returned. If no move can be made, -1 is returned.
+     *
+     * @param depth how many moves ahead to look, at least 1
+     * @return the column of the best move
+     */
+    public int search(int depth) {
+        nodes = 0;
+        aborted = false;
+        hasDeadline = false;
+        int bestMove = searchRoot(depth, -1);
+        depthReached = aborted ? 0 : depth;
+        return bestMove;
+    }
+
+    /**
+     * Searches to depth 1, then 2, and so on up to maxDepth, trying the best move of each depth first at the next.
+     * The search stops when the time budget or node budget runs out, or when a forced win or loss is found, and
+     * the best move of the deepest depth that was finished is returned. Searching the shallow depths first costs
+     * little, and with a transposition table it makes the deeper searches faster. If no move can be made,
+     * -1 is returned.
+     *
+     * @param maxDepth the deepest the search may go
+     * @param timeBudget the most milliseconds the search may take, or 0 for no limit
+     * @return the column of the best move
+     */
+    public int searchIterative(int maxDepth, long timeBudget) {
+        return searchIterative(1, maxDepth, timeBudget);
+    }
+
+    /**
+     * Does the same as searchIterative(maxDepth, timeBudget), but starts at a depth other than 1. Helper threads
+     * of a parallel search start at different depths so they do not all search the same thing at the same time.
+     *
+     * @param startDepth the first depth to search, at least 1
+     * @param maxDepth the deepest the search may go
+     * @param timeBudget the most milliseconds the search may take, or 0 for no limit
+     * @return the column of the best move
+     */
+    public int searchIterative(int startDepth, int maxDepth, long timeBudget) {
+        nodes = 0;
+        aborted = false;
+        hasDeadline = timeBudget > 0;
+        deadline = System.nanoTime() + timeBudget * 1000000L;
+        depthReached = 0;
+
+        int bestMove = -1;
+        int score = 0;
+        for(int depth = Math.max(1, startDepth); depth <= maxDepth; depth++) {
+            int move = searchRoot(depth, bestMove);
+            // the first move of a depth is always kept, so there is a move to give back even if time runs out
+            if(aborted && bestMove != -1)
+                break;
+
+            bestMove = move;
+            score = bestScore;
+            depthReached = depth;
+            if(aborted || Math.abs(score) > WIN_SCORE)
+                break;
+        }
+        bestScore = score;
+        return bestMove;
+    }
+
+    /**
+     * Searches every move of the current player to the given depth. A winning move is returned right away.
+     * If the search runs out of budget, the best of the moves that were completely searched is returned.
+     *
+     * @param depth how many moves ahead to look, at least 1
+     * @param firstMove the column to search first, or -1 to search the columns in order
+     * @return the column of the best move, or -1 if no move can be made
+     */
+    private int searchRoot(int depth, int firstMove) {
+        bestScore = -MAX_SCORE;
+        int bestMove = -1;
+
+        long wins = board.winningMoves();
+        if(wins != 0) {
+            bestScore = winScore();
+            return Connect4Bitboard.toColumn(wins);
+        }
+
+        if(firstMove == -1 && table != null)
+            firstMove = Connect4TranspositionTable.move(table.probe(board.getKey()));
+
+        // if every move lets the other player win, one still has to be picked
+        long allowed = board.nonLosingMoves();
+        if(allowed == 0)
+            allowed = board.possibleMoves();
+
+        int alpha = -MAX_SCORE;
+        int[] moves = moveLists[board.getMoveCount()];
+        int count = orderMoves(firstMove, moves, allowed);
+        for(int i = 0; i < count; i++) {
+            int col = moves[i];
+            if(bestMove == -1)
+                bestMove = col; // there is always a move to give back, even if the budget runs out
+
+            board.play(col);
+            int score = -negamax(depth - 1, -MAX_SCORE, -alpha);
+            board.undo();
+            if(aborted)
+                break;
+
+            if(score > bestScore) {
+                bestScore = score;
+                bestMove = col;
+            }
+            if(score > alpha)
+                alpha = score;
+        }
+        return bestMove;
+    }
+
+    /**
+     * Scores the position for the player whose turn it is by trying every move, and every reply to those
+     * moves, until the depth runs out. Branches that cannot change the result are cut off once the score
+     * reaches beta.
+     *
+     * @param depth how many more moves to look ahead
+     * @param alpha the score the current player is already sure to get
+     * @param beta the score the other player is already sure to hold the current player to
+     * @return the score of the position
+     */
+    private int negamax(int depth, int alpha, int beta) {
+        // the clock and the stop flag are only read every 1024 nodes, since they cost more than searching a node
+        if(++nodes > nodeBudget || ((nodes & 1023) == 0
+                && (stopRequested || (hasDeadline && System.nanoTime() - deadline > 0)))) {
+            aborted = true;
+            return 0;
+        }
+        if(board.getMoveCount() == ROWS * COLUMNS)
+            return 0; // tie
+
+        if(board.winningMoves() != 0)
+            return winScore();
+        // moves that let the other player win right away are never searched, and if that is every move, the
+        // other player wins with their next move
+        long allowed = board.nonLosingMoves();
+        if(allowed == 0)
+            return -(winScore() - 1);
+        if(depth <= 0)
+            return evaluate();
+
+        long key = 0;
+        int tableMove = -1;
+        if(table != null || cache != null) {
+            key = board.getKey();
+            long entry = table != null ? table.probe(key) : 0;
+            // the shared cache is only worth its locking for positions that are costly to search
+            if(cache != null && depth >= Connect4EvalCache.MINDEPTH
+                    && (entry == 0 || Connect4TranspositionTable.depth(entry) < depth)) {
+                long cached = cache.get(key);
+                if(cached != 0 && (entry == 0
+                        || Connect4TranspositionTable.depth(cached) > Connect4TranspositionTable.depth(entry)))
+                    entry = cached;
+            }
+            tableMove = Connect4TranspositionTable.move(entry);
+            if(entry != 0 && Connect4TranspositionTable.depth(entry) >= depth) {
+                int score = Connect4TranspositionTable.score(entry);
+                int bound = Connect4TranspositionTable.bound(entry);
+                if(bound == Connect4TranspositionTable.EXACT)
+                    return score;
+                else if(bound == Connect4TranspositionTable.LOWERBOUND && score > alpha)
+                    alpha = score;
+                else if(bound == Connect4TranspositionTable.UPPERBOUND && score < beta)
+                    beta = score;
+                if(alpha >= beta)
+                    return score;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -MAX_SCORE;
+        int bestMove = -1;
+        int[] moves = moveLists[board.getMoveCount()];
+        int count = orderMoves(tableMove, moves, allowed);
+        for(int i = 0; i < count; i++) {
+            int col = moves[i];
+            board.play(col);
+            int score = -negamax(depth - 1, -beta, -alpha);
+            board.undo();
+            if(aborted)
+                return 0;
+
+            if(score > best) {
+                best = score;
+                bestMove = col;
+            }
+            if(score > alpha)
+                alpha = score;
+            if(alpha >= beta) {
+                if(ordering != null)
+                    ordering.recordCutoff(board, col, depth);
+                break;
+            }
+        }
+
+        if(table != null || cache != null) {
+            int bound;
+            if(best <= originalAlpha)
+                bound = Connect4TranspositionTable.UPPERBOUND;
+            else if(best >= beta)
+                bound = Connect4TranspositionTable.LOWERBOUND;
+            else
+                bound = Connect4TranspositionTable.EXACT;
+            if(table != null)
+                table.store(key, best, bound, bestMove, depth);
+            if(cache != null && depth >= Connect4EvalCache.MINDEPTH)
+                cache.put(key, best, bound, bestMove, depth);
+        }
+        return best;
+    }
+
+    /**
+     * Puts the columns of the allowed moves in the order they should be searched. Without a move ordering,
+     * the best known move goes first and the rest are left to right.
+     *
+     * @param bestMove the best move known for the position, or -1 if there is none
+     * @param moves the array to put the columns in
+     * @param allowed a long with a bit set for the landing spot of every move to search
+     * @return the number of columns to search
+     */
+    private int orderMoves(int bestMove, int[] moves, long allowed) {
+        if(ordering != null)
+            return ordering.orderMoves(board, bestMove, moves, allowed);
+
+        int count = 0;
+        if(bestMove != -1 && (allowed & Connect4Bitboard.columnMask(bestMove)) != 0)
+            moves[count++] = bestMove;
+        for(int col = 0; col < COLUMNS; col++) {
+            if(col != bestMove && (allowed & Connect4Bitboard.columnMask(col)) != 0)
+                moves[count++] = col;
+        }
+        return count;
+    }
+
+    /**
+     * Gives the score for the current player winning with their next move. The sooner the win,
+     * the higher the score.
+     *
+     * @return the score of winning on the next move
+     */
+    private int winScore() {
+        return WIN_SCORE + ROWS * COLUMNS - board.getMoveCount();
+    }
+
+    /**
+     * Gives a heuristic score to a position that has no immediate win, from the open lines and threats
+     * each player has (see Connect4Evaluation).
+     *
+     * @return the heuristic score of the position for the current player
+     */
+    private int evaluate() {
+        return Connect4Evaluation.evaluate(board);
+    }
+
+    /**
+     * Sets the cache shared with other players to look up and keep the results of costly positions in.
+     *
+     * @param cache the shared cache, or null to not use one
+     */
+    public void setCache(Connect4EvalCache cache) { this.cache = cache; }
+
+    /**
+     * Asks the search to stop as soon as it can. It may be called from another thread. Once a search
+     * has been stopped, every later search with it stops right away too.
+     */
+    public void stop() { stopRequested = true; }
+
+    /**
+     * Gets the board being searched. It must not be changed while a search is running.
+     *
+     * @return the board the search was set up with
+     */
+    Connect4Bitboard getBoard() { return board; }
+
+    /**
+     * Gets the number of positions visited by the last search.
+     *
+     * @return the number of nodes searched
+     */
+    public long getNodes() { return nodes; }
+
+    /**
+     * Tells if the last search ran out of its node budget before it finished.
+     *
+     * @return true if the search stopped early
+     */
+    public boolean isAborted() { return aborted; }
+
+    /**
+     * Gets the deepest depth the last search finished.
+     *
+     * @return the depth of the move returned by the last search, or 0 if no depth was finished
+     */
+    public int getDepthReached() { return depthReached; }
+
+    /**
+     * Gets the score of the move returned by the last search.
+     *
+     * @return the score of the best move for the player whose turn it was
+     */
+    public int getBestScore() { return bestScore; }
+}
@@ -0,0 +1,327 @@
+/**
+ * This is an AI for the Connect4 game that looks ahead with a negamax alpha-beta search (see Connect4Search)
+ * instead of following fixed rules like Connect4ComputerPlayer. It searches one move deeper at a time up to a
+ * depth limit, and a time budget and node budget cap how long a single move can take; when either runs out,
+ * the best move of the deepest finished search is played. Results are kept in a transposition table
+ * between moves, so positions searched on one move do not have to be searched again on the next.
+ *
+ * If it has an opening book, positions in the book are played from it without searching. If it has an endgame
+ * solver, late positions are played perfectly, from a tablebase when they have been solved before.
+ *
+ * With more than one thread, the search is parallel (Lazy SMP): helper searches run alongside the main search, all
+ * filling the same transposition table, so the main search finds more of its positions already searched. The move
+ * of the main search is the one played. In a server the helpers borrow the free threads of the Connect4MovePool
+ * the moves are worked out on, so they count against its threads; otherwise they run on a shared ForkJoinPool.
+ * A Connect4EvalCache can also be shared between players, so deep results found for one game are reused in others.
+ *
+ * The player can also ponder while waiting for the other player's move: it guesses their move with a shallow
+ * search, then searches the position after it as if it were its own turn, and goes on to their other moves if time
+ * allows. The results go into the transposition table, so when the other player makes a move that was pondered
+ * on, the search that answers it finds most of its work already done.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+public class Connect4SearchPlayer implements Connect4Strategy, Connect4Constants {
+    // how many moves ahead the default player looks at most
+    public static final int DEFAULTDEPTH = 16;
+    // the most positions the default player visits for one move
+    public static final long DEFAULTNODES = 2000000;
+    // the most milliseconds the default player takes for one move
+    public static final long DEFAULTTIME = 50;
+    // megabytes of transposition table for the default player
+    public static final int DEFAULTTABLESIZE = 2;
+    // the most milliseconds to ponder for while waiting for the other player's move
+    public static final long PONDERTIME = 10000;
+    // how deep to search when guessing the other player's move while pondering
+    private static final int PREDICTDEPTH = 8;
+
+    // runs the helpers of parallel search players and MCTS players that have no move pool, one thread per core
+    static final ForkJoinPool SEARCHPOOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private int maxDepth;
+    private long nodeBudget;
+    private long timeBudget;
+    private Connect4TranspositionTable table;
+    private Connect4MoveOrdering ordering;
+    private Connect4MoveOrdering[] helperOrderings;
+    private Connect4MovePool helperPool;
+    private Connect4OpeningBook book;
+    private Connect4EndgameSolver solver;
+    private Connect4EvalCache cache;
+    private long lastNodes;
+    private int lastDepth;
+
+    /**
+     * Creates a search player with the default depth, node budget and time budget.
+     */
+    public Connect4SearchPlayer() {
+        this(DEFAULTDEPTH, DEFAULTNODES, DEFAULTTIME);
+    }
+
+    /**
+     * Creates a search player that looks a certain number of moves ahead with no time limit.
+     *
+     * @param maxDepth how many moves ahead to look, at least 1
+     * @param nodeBudget the most positions to visit for one move, or 0 for no limit
+     */
+    public Connect4SearchPlayer(int maxDepth, long nodeBudget) {
+        this(maxDepth, nodeBudget, 0);
+    }
+
+    /**
+     * Creates a search player that looks up to a certain number of moves ahead within a time budget.
+     *
+     * @param maxDepth how many moves ahead to look at most, at least 1
+     * @param nodeBudget the most positions to visit for one move, or 0 for no limit
+     * @param timeBudget the most milliseconds to take for one move, or 0 for no limit
+     */
+    public Connect4SearchPlayer(int maxDepth, long nodeBudget, long timeBudget) {
+        this(maxDepth, nodeBudget, timeBudget, new Connect4TranspositionTable(DEFAULTTABLESIZE));
+    }
+
+    /**
+     * Creates a search player that uses the given transposition table, which may be shared with other players.
+     *
+     * @param maxDepth how many moves ahead to look at most, at least 1
+     * @param nodeBudget the most positions to visit for one move, or 0 for no limit
+     * @param timeBudget the most milliseconds to take for one move, or 0 for no limit
+     * @param table the transposition table to keep search results in
+     */
+    public Connect4SearchPlayer(int maxDepth, long nodeBudget, long timeBudget, Connect4TranspositionTable table) {
+        this.maxDepth = Math.max(1, maxDepth);
+        this.nodeBudget = nodeBudget;
+        this.timeBudget = timeBudget;
+        this.table = table;
+        ordering = new Connect4MoveOrdering();
+        helperOrderings = new Connect4MoveOrdering[0];
+        helperPool = null;
+        book = null;
+        solver = null;
+        cache = null;
+        lastNodes = 0;
+        lastDepth = 0;
+    }
+
+    /**
+     * Searches the current board and returns the best column for the player whose turn it is.
+     * If a -1 is returned, the board is full.
+     *
+     * @param coord the coordinates of the last played token (by the other player), not used
+     * @param gameBoard is a 2D char array representing the current state of the game board
+     * @param gameLogic is a Connect4 object with the current state of the game, whose bitboard is searched
+     * @return an int representing the column where the computer will play its token
+     */
+    @Override
+    public int determineMove(int[] coord, char[][] gameBoard, Connect4 gameLogic) {
+        if(book != null) {
+            int col = book.lookup(boardOf(gameBoard, gameLogic));
+            if(col != -1) {
+                lastNodes = 0;
+                lastDepth = 0;
+                return col;
+            }
+        }
+
+        if(solver != null) {
+            Connect4Bitboard board = boardOf(gameBoard, gameLogic);
+            if(solver.canSolve(board)) {
+                // if the solve runs out of nodes, the normal search below is used instead
+                int col = solver.solve(board);
+                if(col != -1) {
+                    lastNodes = 0;
+                    lastDepth = ROWS * COLUMNS - board.getMoveCount();
+                    return col;
+                }
+            }
+        }
+
+        table.newSearch();
+        if(ordering != null)
+            ordering.ageHistory();
+        Connect4Search search = new Connect4Search(boardOf(gameBoard, gameLogic), nodeBudget, table, ordering);
+        search.setCache(cache);
+
+        // every helper gets its own board and ordering, and half of them start a depth deeper
+        Connect4Search[] helpers = new Connect4Search[helperOrderings.length];
+        Future<?>[] tasks = runHelpers(helperPool, helpers.length, i -> {
+            helperOrderings[i].ageHistory();
+            Connect4Search helper = new Connect4Search(boardOf(gameBoard, gameLogic), nodeBudget, table,
+                    helperOrderings[i]);
+            helper.setCache(cache);
+            int startDepth = 1 + (i + 1) % 2;
+            helpers[i] = helper;
+            return () -> helper.searchIterative(startDepth, maxDepth, timeBudget);
+        });
+
+        int col = search.searchIterative(maxDepth, timeBudget);
+        lastNodes = search.getNodes();
+        lastDepth = search.getDepthReached();
+
+        // a helper that never got a thread, such as one queued behind a ponder, is dropped rather than waited for
+        for(int i = 0; i < tasks.length; i++) {
+            helpers[i].stop();
+            drop(helperPool, tasks[i]);
+        }
+        for(int i = 0; i < tasks.length; i++) {
+            join(tasks[i]);
+            lastNodes += helpers[i].getNodes();
+        }
+        return col;
+    }
+
+    /* Gets a new bitboard of the position from the longs the game keeps, or by scanning the board without a game. */
+    static Connect4Bitboard boardOf(char[][] gameBoard, Connect4 gameLogic) {
+        return gameLogic != null ? gameLogic.getBitboard() : Connect4Bitboard.fromSpots(gameBoard);
+    }
+
+    /* Runs helpers on a move pool, which may run fewer than wanted, or on SEARCHPOOL if there is no pool. */
+    static Future<?>[] runHelpers(Connect4MovePool pool, int wanted, IntFunction<Runnable> helpers) {
+        if(pool != null)
+            return pool.runHelpers(wanted, helpers);
+        Future<?>[] tasks = new Future<?>[wanted];
+        for(int i = 0; i < wanted; i++)
+            tasks[i] = SEARCHPOOL.submit(helpers.apply(i));
+        return tasks;
+    }
+
+    /* Takes a helper from runHelpers off the move pool if it has not started. Helpers on SEARCHPOOL are left
+       alone, since cancelling one that is running would stop join from waiting for it. */
+    static void drop(Connect4MovePool pool, Future<?> task) {
+        if(pool != null)
+            task.cancel(false);
+    }
+
+    /* Waits for a helper from runHelpers to finish, or returns at once if it was dropped. */
+    static void join(Future<?> task) {
+        try {
+            task.get();
+        } catch(CancellationException ex) {
+            // a dropped helper never ran, so there is nothing to wait for
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException ex) {
+            System.err.println(ex);
+        }
+    }
+
+    /**
+     * Sets up a search for pondering on the position after this player's move. It fills this player's
+     * transposition table and shared cache, and can be stopped from another thread with Connect4Search.stop,
+     * which stops all of the pondering.
+     *
+     * @param board the position with the other player's turn next, which is changed while pondering
+     * @return the search to give to ponder
+     */
+    public Connect4Search createPonderSearch(Connect4Bitboard board) {
+        Connect4Search search = new Connect4Search(board, 0, table, ordering);
+        search.setCache(cache);
+        return search;
+    }
+
+    /**
+     * Ponders on each move the other player can make, the one they are most likely to make first, until the search
+     * is stopped, every move has been searched to the depth limit or PONDERTIME runs out. It must be finished
+     * before determineMove is called again, since they share the move ordering.
+     *
+     * @param search a search from createPonderSearch
+     */
+    public void ponder(Connect4Search search) {
+        long deadline = System.nanoTime() + PONDERTIME * 1000000L;
+        Connect4Bitboard board = search.getBoard();
+        int predicted = search.searchIterative(Math.min(maxDepth, PREDICTDEPTH), 0);
+
+        for(int i = -1; i < COLUMNS && !search.isAborted(); i++) {
+            int col = i == -1 ? predicted : Connect4MoveOrdering.CENTERORDER[i];
+            if(col == -1 || (i != -1 && col == predicted) || !board.canPlay(col) || board.isWinningMove(col))
+                continue;
+            long timeLeft = (deadline - System.nanoTime()) / 1000000L;
+            if(timeLeft <= 0)
+                break;
+
+            board.play(col);
+            search.searchIterative(maxDepth, timeLeft);
+            board.undo();
+        }
+    }
+
+    /**
+     * Turns the move ordering heuristics on or off. With them off, the columns are searched left to right
+     * after the best known move, which is useful for measuring how much the ordering saves.
+     *
+     * @param useOrdering true to order moves with killer moves and history scores
+     */
+    public void setMoveOrdering(boolean useOrdering) {
+        ordering = useOrdering ? new Connect4MoveOrdering() : null;
+    }
+
+    /**
+     * Sets the opening book to play from. The book may be shared by every player.
+     *
+     * @param book the opening book, or null to search every move
+     */
+    public void setOpeningBook(Connect4OpeningBook book) { this.book = book; }
+
+    /**
+     * Sets a cache of search results to share with other players, so positions another player has searched
+     * deeply do not have to be searched again.
+     *
+     * @param cache the shared cache, or null to not share results
+     */
+    public void setSharedCache(Connect4EvalCache cache) { this.cache = cache; }
+
+    /**
+     * Turns on the endgame solver for positions with at least minMoves tokens. It uses this player's
+     * transposition table and node budget.
+     *
+     * @param minMoves the fewest tokens on the board to solve a position exactly
+     * @param tablebase the tablebase to keep solved positions in, which may be shared, or null to not keep them
+     */
+    public void setEndgameSolver(int minMoves, Connect4Tablebase tablebase) {
+        solver = new Connect4EndgameSolver(minMoves, nodeBudget, table, tablebase);
+    }
+
+    /**
+     * Sets how many threads search for each move. With one thread the search runs only on the thread that asks for
+     * the move; with more, the extra threads are helpers on the helper pool, or on a ForkJoinPool shared by all
+     * search players if there is none.
+     *
+     * @param threads the number of threads to search with, at least 1
+     */
+    public void setThreads(int threads) {
+        helperOrderings = new Connect4MoveOrdering[Math.max(1, threads) - 1];
+        for(int i = 0; i < helperOrderings.length; i++)
+            helperOrderings[i] = new Connect4MoveOrdering();
+    }
+
+    /**
+     * Sets the move pool the helper searches borrow free threads from, so they count against its threads. A move
+     * is then searched by fewer threads than setThreads asked for when the pool is busy.
+     *
+     * @param pool the move pool this player's moves are worked out on, or null to use the shared ForkJoinPool
+     */
+    public void setHelperPool(Connect4MovePool pool) { this.helperPool = pool; }
+
+    /**
+     * Gets the number of positions searched for the last move, by all threads together.
+     *
+     * @return the number of nodes the last search visited
+     */
+    public long getLastNodes() { return lastNodes; }
+
+    /**
+     * Gets how deep the search for the last move got.
+     *
+     * @return the deepest depth the last search finished
+     */
+    public int getLastDepth() { return lastDepth; }
+}
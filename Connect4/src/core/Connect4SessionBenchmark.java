@@ -0,0 +1,163 @@
+/**
+ * This measures how many sessions the server can hold at once with platform threads and with virtual threads, and
+ * what each one costs. It opens connections to a server socket of its own over loopback, and every connection gets
+ * a session thread from Connect4SessionExecutor that blocks reading the player's next move, like a session waiting
+ * for a human who is thinking. It stops at the number of sessions asked for or at the first session that cannot be
+ * started, and then prints how many were held, how long they took to start, and the heap and resident memory used
+ * per session. It has no window and is run from the command line:
+ *
+ *     java core.Connect4SessionBenchmark [sessions] [platform|virtual|both]
+ *
+ * Every session needs two file descriptors, so the open file limit may have to be raised for large runs.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Connect4SessionBenchmark {
+    public static final int DEFAULTSESSIONS = 10000;
+    // how long to wait for the sessions to start before counting the ones that did
+    private static final long STARTTIMEOUT = 60;
+
+    /* Only has static methods. */
+    private Connect4SessionBenchmark() {}
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of sessions, DEFAULTSESSIONS if it is left out, and then the mode to measure,
+     *             both if it is left out
+     */
+    public static void main(String[] args) {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULTSESSIONS;
+        String mode = args.length > 1 ? args[1] : "both";
+
+        if(!mode.equals("virtual"))
+            run(sessions, false);
+        if(!mode.equals("platform")) {
+            if(Connect4SessionExecutor.isVirtualAvailable())
+                run(sessions, true);
+            else
+                System.out.println("virtual threads need Java 21 or later");
+        }
+    }
+
+    /* Holds up to the given number of idle sessions and prints what they cost. */
+    private static void run(int sessions, boolean virtual) {
+        Connect4SessionExecutor executor = Connect4SessionExecutor.create(virtual);
+        List<Socket> clients = new ArrayList<>();
+        List<Socket> accepted = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch blocked = new CountDownLatch(sessions);
+
+        String failure = null;
+        // the status file stays open, so it can still be read once the sessions have used up every descriptor
+        try(ServerSocket serverSocket = new ServerSocket(); FileChannel status = openStatus()) {
+            long heapBefore = usedHeap();
+            long residentBefore = residentMemory(status);
+            long startTime = System.nanoTime();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), sessions);
+            try {
+                for(int i = 0; i < sessions; i++) {
+                    clients.add(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+                    Socket player = serverSocket.accept();
+                    accepted.add(player);
+                    executor.execute(() -> {
+                        started.incrementAndGet();
+                        blocked.countDown();
+                        try {
+                            new DataInputStream(player.getInputStream()).readInt();
+                        } catch(IOException ex) {
+                            // the client closed the connection, which ends the session
+                        }
+                    });
+                }
+                blocked.await(STARTTIMEOUT, TimeUnit.SECONDS);
+            } catch(IOException | OutOfMemoryError ex) {
+                failure = ex.toString();
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            long startMillis = (System.nanoTime() - startTime) / 1000000;
+            // give the last sessions time to block in their read
+            Thread.sleep(500);
+            long heapPerSession = (usedHeap() - heapBefore) / Math.max(1, started.get());
+            long residentPerSession = (residentMemory(status) - residentBefore) / Math.max(1, started.get());
+
+            System.out.println((executor.isVirtual() ? "virtual" : "platform") + " threads: " + started.get()
+                    + " of " + sessions + " sessions held, started in " + startMillis + " ms");
+            System.out.println("  heap per session: " + heapPerSession + " bytes");
+            if(residentBefore > 0)
+                System.out.println("  resident memory per session: " + residentPerSession + " bytes");
+            if(failure != null)
+                System.out.println("  stopped by " + failure);
+        } catch(IOException ex) {
+            System.err.println(ex);
+        } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeAll(clients);
+            closeAll(accepted);
+        }
+    }
+
+    /* Gets the heap in use after a garbage collection. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /* Opens the status file of the process on Linux, where thread stacks show up in the resident memory, or
+       returns null elsewhere. */
+    private static FileChannel openStatus() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        return Files.isReadable(status) ? FileChannel.open(status, StandardOpenOption.READ) : null;
+    }
+
+    /* Gets the resident memory of the process from its status file, or 0 if there is none. */
+    private static long residentMemory(FileChannel status) throws IOException {
+        if(status == null)
+            return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        status.read(buffer, 0);
+        String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+        for(String line : text.split("\n")) {
+            if(line.startsWith("VmRSS:"))
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+        }
+        return 0;
+    }
+
+    private static void closeAll(List<Socket> sockets) {
+        for(Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch(IOException ex) {
+                System.err.println(ex);
+            }
+        }
+    }
+}
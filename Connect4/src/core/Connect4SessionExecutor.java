@@ -0,0 +1,87 @@
+/**
+ * This starts the threads that run the server's sessions and its accept loop. By default every session gets a
+ * platform thread of its own, as it always has. In virtual mode every session gets a virtual thread instead, which
+ * costs a few hundred bytes of heap rather than a whole stack, so far more sessions fit while the blocking code of
+ * the sessions stays as it is. Virtual threads need Java 21; they are looked up at run time so the server still
+ * builds and runs on older versions, where virtual mode falls back to platform threads.
+ *
+ * A virtual thread that blocks while it holds a monitor pins its carrier thread, so code that sessions call on
+ * every move uses locks from java.util.concurrent instead of synchronized.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class Connect4SessionExecutor implements Executor {
+    private ExecutorService virtualExecutor; // null when sessions run on platform threads
+    private AtomicInteger threadCount;
+
+    /* Executors are made with create. */
+    private Connect4SessionExecutor(ExecutorService virtualExecutor) {
+        this.virtualExecutor = virtualExecutor;
+        threadCount = new AtomicInteger();
+    }
+
+    /**
+     * Creates an executor that runs each task on a thread of its own.
+     *
+     * @param virtual true to use virtual threads if this Java has them
+     * @return the executor
+     */
+    public static Connect4SessionExecutor create(boolean virtual) {
+        return new Connect4SessionExecutor(virtual ? newVirtualExecutor() : null);
+    }
+
+    /**
+     * Tells if this Java has virtual threads.
+     *
+     * @return true if virtual mode uses virtual threads
+     */
+    public static boolean isVirtualAvailable() {
+        ExecutorService executor = newVirtualExecutor();
+        if(executor == null)
+            return false;
+        executor.shutdown();
+        return true;
+    }
+
+    /**
+     * Runs a task on a new thread.
+     *
+     * @param task the session or accept loop to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        if(virtualExecutor != null)
+            virtualExecutor.execute(task);
+        else
+            new Thread(task, "Connect4 session " + threadCount.incrementAndGet()).start();
+    }
+
+    /**
+     * Tells if the tasks run on virtual threads.
+     *
+     * @return true in virtual mode on a Java that has virtual threads
+     */
+    public boolean isVirtual() { return virtualExecutor != null; }
+
+    /* Gets Executors.newVirtualThreadPerTaskExecutor if this Java has it, or null. */
+    private static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(NoSuchMethodException ex) {
+            return null;
+        } catch(IllegalAccessException | InvocationTargetException ex) {
+            System.err.println(ex);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * This interface is for the ways the computer can choose its move. A game session holds on to a strategy
+ * and asks it for a column every time it is the computer's turn, so a different AI can be plugged in
+ * without changing the session.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+public interface Connect4Strategy {
+    /**
+     * Chooses the column where the computer will drop its token. If a -1 is returned, there is an
+     * unexpected error.
+     *
+     * @param coord the coordinates of the last played token (by the other player)
+     * @param gameBoard is a 2D char array representing the current state of the game board
+     * @param gameLogic is a Connect4 object with the current state of the game
+     * @return an int representing the column where the computer will play its token
+     */
+    int determineMove(int[] coord, char[][] gameBoard, Connect4 gameLogic);
+}
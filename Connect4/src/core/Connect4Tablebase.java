@@ -0,0 +1,179 @@
+/**
+ * This is an on-disk table of solved positions for the endgame solver. The file is a hash table that is memory
+ * mapped for reading and writing, so a position solved in one session is a single lookup in every later session,
+ * even after the server restarts. A position and its mirror image share one slot.
+ *
+ * The file starts with a header of four ints (the magic number, the version, the number of slots and a spare int),
+ * followed by the slots. Each slot is 16 bytes: the canonical position key (0 for an empty slot), then the exact
+ * score of the position and its best column. Slots are found by linear probing from the hash of the key. The table
+ * stops taking new positions once it is three quarters full.
+ *
+ * All methods are synchronized, so one tablebase can be shared by every session.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class Connect4Tablebase implements Connect4Constants {
+    // "C4TB"
+    private static final int MAGIC = 0x43345442;
+    private static final int VERSION = 1;
+    private static final int HEADERSIZE = 16;
+    private static final int SLOTSIZE = 16;
+
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    /* Tablebases are made with open. */
+    private Connect4Tablebase(MappedByteBuffer buffer, int capacity, int size) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Opens a tablebase file, or makes a new empty one if the file does not exist. The number of slots of an
+     * existing file is kept; the capacity is only used for a new file and is rounded up to a power of two
+     * (up to 2^26 slots, or 1 GB).
+     *
+     * @param file the tablebase file
+     * @param capacity the number of slots for a new file
+     * @return the tablebase in the file
+     * @throws IOException an exception that is thrown if the file cannot be read or written, or is not a tablebase
+     */
+    public static Connect4Tablebase open(Path file, int capacity) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            boolean isNew = channel.size() == 0;
+            // at most 2^26 slots, so every offset fits in an int
+            int slots = isNew ? Integer.highestOneBit(Math.min(Math.max(2, capacity) - 1, (1 << 26) - 1)) << 1 : 0;
+            long length = isNew ? HEADERSIZE + (long) slots * SLOTSIZE : channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+            if(isNew) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, slots);
+                return new Connect4Tablebase(buffer, slots, 0);
+            }
+
+            if(length < HEADERSIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                throw new IOException(file + " is not a Connect4 tablebase");
+            slots = buffer.getInt(8);
+            if(Integer.bitCount(slots) != 1 || length < HEADERSIZE + (long) slots * SLOTSIZE)
+                throw new IOException(file + " is cut short");
+
+            int size = 0;
+            for(int slot = 0; slot < slots; slot++) {
+                if(buffer.getLong(offset(slot)) != 0)
+                    size++;
+            }
+            return new Connect4Tablebase(buffer, slots, size);
+        }
+    }
+
+    /**
+     * Looks a position up in the tablebase.
+     *
+     * @param board the position
+     * @return the packed result for the position (see score and move), or 0 if it has not been solved
+     */
+    public synchronized int lookup(Connect4Bitboard board) {
+        long key = board.getKey();
+        long mirroredKey = board.getMirroredKey();
+        long canonicalKey = Math.min(key, mirroredKey);
+
+        // the table is never full, so there is always an empty slot to stop at
+        int slot = index(canonicalKey);
+        long slotKey;
+        while((slotKey = buffer.getLong(offset(slot))) != 0) {
+            if(slotKey == canonicalKey) {
+                int score = buffer.getInt(offset(slot) + 8);
+                int col = buffer.getInt(offset(slot) + 12);
+                if(mirroredKey < key)
+                    col = COLUMNS - 1 - col;
+                return pack(score, col);
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the exact result of a position. Nothing is stored once the tablebase is three quarters full.
+     *
+     * @param board the position
+     * @param score the exact score of the position for the player whose turn it is (see Connect4Search)
+     * @param col the best column in the position
+     */
+    public synchronized void store(Connect4Bitboard board, int score, int col) {
+        long key = board.getKey();
+        long mirroredKey = board.getMirroredKey();
+        long canonicalKey = Math.min(key, mirroredKey);
+        if(mirroredKey < key)
+            col = COLUMNS - 1 - col;
+
+        int slot = index(canonicalKey);
+        long slotKey;
+        while((slotKey = buffer.getLong(offset(slot))) != 0 && slotKey != canonicalKey)
+            slot = (slot + 1) & (capacity - 1);
+
+        if(slotKey == 0) {
+            if(size >= capacity / 4 * 3)
+                return;
+            size++;
+        }
+        buffer.putInt(offset(slot) + 8, score);
+        buffer.putInt(offset(slot) + 12, col);
+        buffer.putLong(offset(slot), canonicalKey);
+    }
+
+    /**
+     * Writes any changes out to the file.
+     */
+    public synchronized void flush() { buffer.force(); }
+
+    /**
+     * Gets the number of positions in the tablebase.
+     *
+     * @return the number of solved positions stored
+     */
+    public synchronized int getSize() { return size; }
+
+    /**
+     * Gets the score from a packed result.
+     *
+     * @param result a packed result from lookup
+     * @return the exact score of the position
+     */
+    public static int score(int result) { return result >> 4; }
+
+    /**
+     * Gets the best column from a packed result.
+     *
+     * @param result a packed result from lookup
+     * @return the best column
+     */
+    public static int move(int result) { return (result & 0xF) - 1; }
+
+    /* Packs a score and column into an int that is never 0. */
+    private static int pack(int score, int col) { return (score << 4) | (col + 1); }
+
+    /* Finds the slot to start probing at for a key. */
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (capacity - 1);
+    }
+
+    /* Finds where a slot starts in the file. */
+    private static int offset(int slot) { return HEADERSIZE + slot * SLOTSIZE; }
+}
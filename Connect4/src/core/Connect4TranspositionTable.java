@@ -0,0 +1,168 @@
+/**
+ * This is a fixed-size transposition table for the computer player's search. It remembers the score, the kind of
+ * bound the score is, the depth it was searched to and the best move of positions that have been searched, so the
+ * same position reached by a different order of moves is not searched again.
+ *
+ * The table is made of two long arrays, so its memory use is set when it is created and never grows. Each bucket
+ * has two slots: the first keeps the deepest result (results from an older search are always replaced), and the
+ * second always takes the newest result. Entries are stored as the key XORed with the data next to the data, so
+ * a reader racing with a writer on another thread sees a key that does not match instead of a mixed-up entry.
+ * This makes it safe to share one table between search threads without locking.
+ *
+ * @author Sandstrom
+ * @version 1.0
+ */
+
+package core;
+
+import java.util.Arrays;
+
+public class Connect4TranspositionTable {
+    // the score is exact, at least the stored score, or at most the stored score
+    public static final int EXACT = 1;
+    public static final int LOWERBOUND = 2;
+    public static final int UPPERBOUND = 3;
+
+    // two longs in the checked key array and two in the data array for every bucket
+    private static final int BYTESPERBUCKET = 32;
+
+    // bit layout of a packed entry
+    private static final int BOUNDSHIFT = 0;
+    private static final int MOVESHIFT = 2;
+    private static final int DEPTHSHIFT = 6;
+    private static final int AGESHIFT = 14;
+    private static final int SCORESHIFT = 22;
+
+    private long[] checks;
+    private long[] data;
+    private int bucketMask;
+    private volatile int age;
+
+    /**
+     * Creates a table that uses about the given amount of memory. The number of buckets is
+     * rounded down to a power of two.
+     *
+     * @param megabytes how much memory the table can use
+     */
+    public Connect4TranspositionTable(int megabytes) {
+        long buckets = Math.max(1L, (long) megabytes * 1024 * 1024 / BYTESPERBUCKET);
+        int size = Integer.highestOneBit((int) Math.min(buckets, 1 << 26));
+        checks = new long[size * 2];
+        data = new long[size * 2];
+        bucketMask = size - 1;
+        age = 0;
+    }
+
+    /**
+     * Looks a position up in the table.
+     *
+     * @param key the key of the position (see Connect4Bitboard.getKey)
+     * @return the packed entry for the position, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int index = index(key);
+        for(int slot = index; slot < index + 2; slot++) {
+            long entry = data[slot];
+            if(entry != 0 && (checks[slot] ^ entry) == key)
+                return entry;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of searching a position. It goes in the first slot of its bucket if that slot is empty,
+     * holds the same position, was searched less deep, or is from an older search; otherwise it goes in the
+     * second slot.
+     *
+     * @param key the key of the position
+     * @param score the score of the position
+     * @param bound EXACT, LOWERBOUND or UPPERBOUND
+     * @param move the best column found, or -1 if there is none
+     * @param depth how deep the position was searched
+     */
+    public void store(long key, int score, int bound, int move, int depth) {
+        int currentAge = age;
+        long entry = pack(score, bound, move, depth, currentAge);
+        int slot = index(key);
+
+        long first = data[slot];
+        boolean replaceFirst = first == 0 || (checks[slot] ^ first) == key
+                || depth(first) <= depth || age(first) != (currentAge & 0xFF);
+        if(!replaceFirst)
+            slot++;
+
+        data[slot] = entry;
+        checks[slot] = key ^ entry;
+    }
+
+    /**
+     * Marks the start of a new search, so the results of older searches are replaced first.
+     */
+    public void newSearch() { age++; }
+
+    /**
+     * Empties the table.
+     */
+    public void clear() {
+        Arrays.fill(checks, 0L);
+        Arrays.fill(data, 0L);
+    }
+
+    /**
+     * Gets the number of entries the table can hold.
+     *
+     * @return the number of slots in the table
+     */
+    public int getCapacity() { return data.length; }
+
+    /**
+     * Gets the score from a packed entry.
+     *
+     * @param entry a packed entry from probe
+     * @return the score of the position
+     */
+    public static int score(long entry) { return (int) (entry >> SCORESHIFT); }
+
+    /**
+     * Gets the kind of bound from a packed entry.
+     *
+     * @param entry a packed entry from probe
+     * @return EXACT, LOWERBOUND or UPPERBOUND
+     */
+    public static int bound(long entry) { return (int) (entry >>> BOUNDSHIFT) & 0x3; }
+
+    /**
+     * Gets the best move from a packed entry.
+     *
+     * @param entry a packed entry from probe
+     * @return the best column, or -1 if there is none
+     */
+    public static int move(long entry) { return ((int) (entry >>> MOVESHIFT) & 0xF) - 1; }
+
+    /**
+     * Gets the search depth from a packed entry.
+     *
+     * @param entry a packed entry from probe
+     * @return how deep the position was searched
+     */
+    public static int depth(long entry) { return (int) (entry >>> DEPTHSHIFT) & 0xFF; }
+
+    /* Gets the age of the search that stored a packed entry. */
+    private static int age(long entry) { return (int) (entry >>> AGESHIFT) & 0xFF; }
+
+    /* Packs the parts of an entry into a long. The bound is never 0, so an entry is never 0. Connect4EvalCache
+       keeps its entries in the same form. */
+    static long pack(int score, int bound, int move, int depth, int age) {
+        return ((long) score << SCORESHIFT)
+                | ((long) (age & 0xFF) << AGESHIFT)
+                | ((long) (Math.min(depth, 0xFF)) << DEPTHSHIFT)
+                | ((long) ((move + 1) & 0xF) << MOVESHIFT)
+                | ((long) bound << BOUNDSHIFT);
+    }
+
+    /* Finds the first slot of the bucket for a key. */
+    private int index(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & bucketMask) * 2;
+    }
+}
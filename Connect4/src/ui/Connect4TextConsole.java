@@ -8,10 +8,11 @@
 
 package ui;
 import java.util.Scanner;
+import core.Connect4Constants;
 import core.Connect4Old;
 import core.Connect4ComputerPlayerOld;
 
-public class Connect4TextConsole {
+public class Connect4TextConsole implements Connect4Constants {
     private char[][] gameBoard;
     Connect4Old gameLogic = new Connect4Old();
     Scanner scan = new Scanner(System.in);
@@ -92,13 +93,13 @@ public class Connect4TextConsole {
     /**
      * Prints out the appropriate winner (player X or O). Is called from the checkForWinner method.
      *
-     * @param whoWon the player that won the game
+     * @param whoWon the outcome of the game (PLAYERXWON, PLAYEROWON or TIE)
      * @return a message with the player that won the game
      */
-    public String printWinner(String whoWon) {
-        if(whoWon.equals("PLAYERX"))
+    public String printWinner(int whoWon) {
+        if(whoWon == PLAYERXWON)
             return "Player X Won the Game";
-        else if(whoWon.equals("PLAYERO"))
+        else if(whoWon == PLAYEROWON)
             return "Player O Won the Game";
         else
             return "Tie";
@@ -140,7 +141,7 @@ public class Connect4TextConsole {
      * a message comes on the screen and the program terminates (unexpected).
      */
     public void playTextConsole() {
-        String winner = ""; // needs to be initialized
+        int winner = NOWIN; // needs to be initialized
         String input;
 
         System.out.println("Playing text interface.");
@@ -176,10 +177,10 @@ public class Connect4TextConsole {
                 displayBoard(gameLogic.getRows(), gameLogic.getCols());
 
                 gameLogic.checkBoard();
-                winner = gameLogic.checkForWinner();
+                winner = gameLogic.getOutcome();
 
                 gameLogic.changePlayerTurn();
-            } while (winner.equals("NO_WIN"));
+            } while (winner == NOWIN);
         } else if (input.equals("C")) {
             do {
                 Connect4ComputerPlayerOld computerPlayer = new Connect4ComputerPlayerOld();
@@ -215,10 +216,10 @@ public class Connect4TextConsole {
                 displayBoard(gameLogic.getRows(), gameLogic.getCols());
 
                 gameLogic.checkBoard();
-                winner = gameLogic.checkForWinner();
+                winner = gameLogic.getOutcome();
 
                 gameLogic.changePlayerTurn();
-            } while (winner.equals("NO_WIN"));
+            } while (winner == NOWIN);
         }
         System.out.println(printWinner(winner));
     }